@@ -0,0 +1,72 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.service.impl.BookAvailabilityIndexImpl;
+
+/**
+ * Latency of one bulk availability check against the in-memory bitmap, with
+ * a share of a synthetic catalog loaned out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookAvailabilityBenchmark {
+
+	@Param({ "1000000" })
+	public int books;
+
+	@Param({ "0.3" })
+	public double loanedShare;
+
+	@Param({ "5000" })
+	public int requestedIds;
+
+	private BookAvailabilityIndexImpl index;
+
+	private List<Long> ids;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+
+		index = new BookAvailabilityIndexImpl(null);
+		for (long id = 1; id <= books; id++) {
+			if (random.nextDouble() < loanedShare) {
+				index.update(Loan.builder().book(Book.builder().id(id).build()).build());
+			}
+		}
+
+		ids = new ArrayList<>(requestedIds);
+		for (int i = 0; i < requestedIds; i++) {
+			ids.add(1L + random.nextInt(books));
+		}
+	}
+
+	@Benchmark
+	public BookAvailabilityDTO check() {
+		return index.check(ids);
+	}
+
+}
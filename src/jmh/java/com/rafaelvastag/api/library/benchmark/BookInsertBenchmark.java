@@ -0,0 +1,68 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.service.BookService;
+
+/**
+ * Compares inserting a catalog one {@code save} at a time with the batched
+ * {@code saveAll}. Scores are books inserted per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookInsertBenchmark {
+
+	private static final int ROWS = 1000;
+
+	private BookService bookService;
+
+	private long sequence;
+
+	@Setup
+	public void setUp(LibraryContext library) {
+		this.bookService = library.bean(BookService.class);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void singleRowSave() {
+		for (Book book : nextCatalog()) {
+			bookService.save(book);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public List<Book> batchSave() {
+		return bookService.saveAll(nextCatalog());
+	}
+
+	private List<Book> nextCatalog() {
+		List<Book> catalog = new ArrayList<>(ROWS);
+		for (int i = 0; i < ROWS; i++) {
+			long n = sequence++;
+			catalog.add(Book.builder().title("Title " + n).author("Author").isbn("insert-" + n).build());
+		}
+		return catalog;
+	}
+
+}
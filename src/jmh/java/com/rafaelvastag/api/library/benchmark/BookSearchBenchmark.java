@@ -0,0 +1,122 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.service.impl.BookSearchIndexImpl;
+
+/**
+ * Search latency of the in-memory book index over a synthetic catalog, without
+ * the database round trip that loads the page of books afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BookSearchBenchmark {
+
+	private static final int WORDS = 20000;
+
+	private static final int AUTHORS = 5000;
+
+	@Param({ "1000000" })
+	public int books;
+
+	private BookSearchIndexImpl index;
+
+	private Pageable firstPage = PageRequest.of(0, 20);
+
+	private Book titleWord;
+
+	private Book titleFragment;
+
+	private Book titleAndAuthor;
+
+	private Book isbn;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		String[] words = new String[WORDS];
+		for (int i = 0; i < WORDS; i++) {
+			words[i] = word(random);
+		}
+		String[] authors = new String[AUTHORS];
+		for (int i = 0; i < AUTHORS; i++) {
+			authors[i] = capitalize(word(random)) + " " + capitalize(word(random));
+		}
+
+		index = new BookSearchIndexImpl(null);
+		List<Book> batch = new ArrayList<>(10000);
+		for (long id = 1; id <= books; id++) {
+			String title = capitalize(words[random.nextInt(WORDS)]) + " " + words[random.nextInt(WORDS)] + " "
+					+ words[random.nextInt(WORDS)];
+			batch.add(Book.builder().id(id).title(title).author(authors[random.nextInt(AUTHORS)])
+					.isbn(String.format("978%010d", id)).build());
+
+			if (batch.size() == 10000) {
+				index.indexAll(batch);
+				batch.clear();
+			}
+		}
+		index.indexAll(batch);
+
+		titleWord = Book.builder().title(words[7]).build();
+		titleFragment = Book.builder().title(words[7].substring(1, 4)).build();
+		titleAndAuthor = Book.builder().title(words[7].substring(0, 4)).author(authors[3].substring(0, 4)).build();
+		isbn = Book.builder().isbn("0000123").build();
+	}
+
+	@Benchmark
+	public Page<Long> searchTitleWord() {
+		return index.search(titleWord, firstPage);
+	}
+
+	@Benchmark
+	public Page<Long> searchTitleFragment() {
+		return index.search(titleFragment, firstPage);
+	}
+
+	@Benchmark
+	public Page<Long> searchTitleAndAuthor() {
+		return index.search(titleAndAuthor, firstPage);
+	}
+
+	@Benchmark
+	public Page<Long> searchIsbn() {
+		return index.search(isbn, firstPage);
+	}
+
+	private static String word(Random random) {
+		char[] letters = new char[5 + random.nextInt(6)];
+		for (int i = 0; i < letters.length; i++) {
+			letters[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(letters);
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rafaelvastag.api.library.mapper.BookMapper;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.service.impl.BookSearchIndexImpl;
+import com.rafaelvastag.api.library.service.impl.CatalogSnapshotServiceImpl;
+
+/**
+ * Time until a freshly started node has a full search index and ISBN cache:
+ * reading the whole book table ({@code rebuild}) against mapping the catalog
+ * snapshot ({@code load}). Every invocation starts from empty structures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CatalogWarmStartBenchmark {
+
+	private BookRepository repository;
+
+	private BookMapper bookMapper;
+
+	private PlatformTransactionManager transactionManager;
+
+	private Path file;
+
+	private BookSearchIndexImpl searchIndex;
+
+	private Cache<String, Optional<Book>> isbnCache;
+
+	@Setup(Level.Trial)
+	public void setUp(LibraryContext library) throws IOException {
+		repository = library.bean(BookRepository.class);
+		bookMapper = library.bean(BookMapper.class);
+		transactionManager = library.bean(PlatformTransactionManager.class);
+		file = Files.createTempFile("catalog", ".snapshot");
+
+		snapshotService().write();
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyIndex() {
+		searchIndex = new BookSearchIndexImpl(repository);
+		isbnCache = Caffeine.newBuilder().maximumSize(10_000).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteSnapshot() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public BookSearchIndexImpl rebuild() {
+		searchIndex.rebuild();
+		return searchIndex;
+	}
+
+	@Benchmark
+	public BookSearchIndexImpl load() {
+		snapshotService().load();
+		return searchIndex;
+	}
+
+	private CatalogSnapshotServiceImpl snapshotService() {
+		CatalogSnapshotServiceImpl service = new CatalogSnapshotServiceImpl(repository, searchIndex, isbnCache,
+				bookMapper, transactionManager);
+		ReflectionTestUtils.setField(service, "path", file.toString());
+		return service;
+	}
+
+}
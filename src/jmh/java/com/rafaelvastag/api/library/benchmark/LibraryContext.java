@@ -0,0 +1,100 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.rafaelvastag.api.library.LibraryApplication;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.BookService;
+
+/**
+ * Boots the application once per fork against an embedded H2 database and
+ * seeds it with a catalog and loan history the benchmarks can query.
+ */
+@State(Scope.Benchmark)
+public class LibraryContext {
+
+	@Param({ "1000" })
+	public int books;
+
+	@Param({ "10" })
+	public int loansPerBook;
+
+	public ConfigurableApplicationContext context;
+
+	public List<Long> bookIds;
+
+	@Setup(Level.Trial)
+	public void start() {
+		boot();
+	}
+
+	/**
+	 * Boots and seeds the application, with {@code properties} overriding the
+	 * benchmark defaults.
+	 */
+	public void boot(String... properties) {
+		context = new SpringApplicationBuilder(LibraryApplication.class)
+				.web(WebApplicationType.SERVLET)
+				.properties("server.port=0",
+						"spring.boot.admin.client.enabled=false",
+						"application.catalog.snapshot.enabled=false",
+						"spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+						"logging.level.root=WARN",
+						"logging.file.name=")
+				.properties(properties)
+				.run();
+
+		seed();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	public <T> T bean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	public int port() {
+		return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+	}
+
+	private void seed() {
+		BookService bookService = bean(BookService.class);
+		LoanRepository loanRepository = bean(LoanRepository.class);
+
+		List<Book> catalog = new ArrayList<>(books);
+		for (int i = 0; i < books; i++) {
+			catalog.add(Book.builder().title("Title " + i).author("Author " + (i % 100)).isbn("isbn-" + i).build());
+		}
+		catalog = bookService.saveAll(catalog);
+		bookIds = catalog.stream().map(Book::getId).collect(Collectors.toList());
+
+		List<Loan> history = new ArrayList<>(books * loansPerBook);
+		for (int i = 0; i < loansPerBook; i++) {
+			for (Book book : catalog) {
+				history.add(Loan.builder().book(book).customer("Customer " + (history.size() % 500))
+						.emailCustomer("customer@email.com").loanDate(LocalDate.now().minusDays(i)).returned(true)
+						.build());
+			}
+		}
+		loanRepository.saveAll(history);
+	}
+
+}
@@ -0,0 +1,190 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Closed-loop HTTP load test comparing Tomcat's platform worker pool with
+ * {@code application.threads.virtual=true}. For every mode and number of
+ * concurrent users it reports the sustained requests per second and the
+ * p50/p99 latency recorded in an HdrHistogram. The request mix is half
+ * {@code GET /api/books/{id}} and half {@code GET /api/loans?isbn=...}.
+ *
+ * Not a JMH benchmark: run it on JDK 21 (the virtual mode is skipped on older
+ * runtimes) with
+ * {@code ./mvnw -Pbenchmark -DskipTests test-compile exec:exec@load-test}.
+ * Arguments: {@code --users=50,200,800 --warmup=5 --seconds=15} and any
+ * number of {@code --property=key=value} application overrides.
+ */
+public class LoadBenchmark {
+
+	private static final String[] MODES = { "platform", "virtual" };
+
+	private static final long MAX_LATENCY_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+	private final List<Integer> users = new ArrayList<>(Arrays.asList(50, 200, 800));
+
+	private final List<String> properties = new ArrayList<>();
+
+	private int warmupSeconds = 5;
+
+	private int measureSeconds = 15;
+
+	public static void main(String[] args) throws Exception {
+		LoadBenchmark benchmark = new LoadBenchmark();
+		benchmark.parse(args);
+		benchmark.run();
+		System.exit(0);
+	}
+
+	private void parse(String[] args) {
+		for (String arg : args) {
+			if (arg.startsWith("--users=")) {
+				users.clear();
+				for (String value : arg.substring("--users=".length()).split(",")) {
+					users.add(Integer.valueOf(value.trim()));
+				}
+			} else if (arg.startsWith("--warmup=")) {
+				warmupSeconds = Integer.parseInt(arg.substring("--warmup=".length()));
+			} else if (arg.startsWith("--seconds=")) {
+				measureSeconds = Integer.parseInt(arg.substring("--seconds=".length()));
+			} else if (arg.startsWith("--property=")) {
+				properties.add(arg.substring("--property=".length()));
+			} else if (!arg.trim().isEmpty()) {
+				throw new IllegalArgumentException("Unknown argument " + arg);
+			}
+		}
+	}
+
+	private void run() throws Exception {
+		System.setProperty("http.maxConnections", String.valueOf(users.stream().max(Integer::compare).orElse(5)));
+		System.out.printf("%-9s %6s %10s %9s %9s %7s%n", "mode", "users", "req/s", "p50 ms", "p99 ms", "errors");
+
+		for (String mode : MODES) {
+			boolean virtual = "virtual".equals(mode);
+			if (virtual && !virtualThreadsAvailable()) {
+				System.out.println("virtual   skipped, needs Java 21 or newer");
+				continue;
+			}
+
+			List<String> modeProperties = new ArrayList<>(properties);
+			modeProperties.add("application.threads.virtual=" + virtual);
+
+			LibraryContext library = new LibraryContext();
+			library.books = 1000;
+			library.loansPerBook = 10;
+			library.boot(modeProperties.toArray(new String[0]));
+			try {
+				for (int level : users) {
+					Result result = load(library, level);
+					System.out.printf("%-9s %6d %10.1f %9.2f %9.2f %7d%n", mode, level, result.requestsPerSecond,
+							result.p50Millis, result.p99Millis, result.errors);
+				}
+			} finally {
+				library.stop();
+			}
+		}
+	}
+
+	private Result load(LibraryContext library, int level) throws InterruptedException {
+		String baseUrl = "http://localhost:" + library.port();
+		List<Long> bookIds = library.bookIds;
+		Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+		AtomicLong completed = new AtomicLong();
+		AtomicLong errors = new AtomicLong();
+		long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = warmupEnd + TimeUnit.SECONDS.toNanos(measureSeconds);
+
+		List<Thread> clients = new ArrayList<>(level);
+		for (int i = 0; i < level; i++) {
+			Thread client = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				while (System.nanoTime() < end) {
+					int book = random.nextInt(bookIds.size());
+					String path = random.nextBoolean() ? "/api/books/" + bookIds.get(book)
+							: "/api/loans?isbn=isbn-" + book + "&customerName=Customer&size=10";
+
+					long start = System.nanoTime();
+					boolean ok = get(baseUrl + path);
+					long finished = System.nanoTime();
+
+					if (start >= warmupEnd) {
+						long micros = TimeUnit.NANOSECONDS.toMicros(finished - start);
+						recorder.recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+						completed.incrementAndGet();
+						if (!ok) {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			}, "load-client-" + i);
+			client.setDaemon(true);
+			clients.add(client);
+			client.start();
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+
+		Histogram histogram = recorder.getIntervalHistogram();
+		return new Result(completed.get() / (double) measureSeconds, histogram.getValueAtPercentile(50) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0, errors.get());
+	}
+
+	private static boolean get(String url) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestProperty("Accept", "application/json");
+			int status = connection.getResponseCode();
+
+			try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (body != null) {
+					byte[] buffer = new byte[8192];
+					while (body.read(buffer) >= 0) {
+						// drain so the connection goes back to the keep-alive pool
+					}
+				}
+			}
+			return status == 200;
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	private static boolean virtualThreadsAvailable() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	private static class Result {
+
+		private final double requestsPerSecond;
+		private final double p50Millis;
+		private final double p99Millis;
+		private final long errors;
+
+		Result(double requestsPerSecond, double p50Millis, double p99Millis, long errors) {
+			this.requestsPerSecond = requestsPerSecond;
+			this.p50Millis = p50Millis;
+			this.p99Millis = p99Millis;
+			this.errors = errors;
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.dto.LoanFilterDTO;
+import com.rafaelvastag.api.library.resource.LoanController;
+
+/**
+ * Covers GET /api/loans without the servlet stack: the query plus DTO mapping
+ * done by {@link LoanController#find} and the JSON rendering of the page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanListingBenchmark {
+
+	@Param({ "100" })
+	private int pageSize;
+
+	private LoanController loanController;
+
+	private ObjectMapper objectMapper;
+
+	private LoanFilterDTO filter;
+
+	private Pageable pageRequest;
+
+	private PageImpl<LoanDTO> page;
+
+	@Setup
+	public void setUp(LibraryContext library) {
+		this.loanController = library.bean(LoanController.class);
+		this.objectMapper = library.bean(ObjectMapper.class);
+		this.filter = LoanFilterDTO.builder().isbn("isbn-1").customerName("Customer 1").build();
+		this.pageRequest = PageRequest.of(0, pageSize);
+
+		Page<LoanDTO> result = loanController.find(filter, pageRequest);
+		List<LoanDTO> content = result.getContent();
+		this.page = new PageImpl<>(content, pageRequest, result.getTotalElements());
+	}
+
+	@Benchmark
+	public Page<LoanDTO> findAndMapLoans() {
+		return loanController.find(filter, pageRequest);
+	}
+
+	@Benchmark
+	public byte[] serializeLoanPage() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(page);
+	}
+
+}
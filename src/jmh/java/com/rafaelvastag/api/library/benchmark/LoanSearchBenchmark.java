@@ -0,0 +1,106 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.repository.LoanRepository;
+
+/**
+ * One page of the ISBN-or-customer loan search over a large loan table: the
+ * single OR query it used to be against the merged per-filter lookups. The
+ * loans are generated in the database with one insert-select, so the table can
+ * be grown to ten million rows with {@code -p loans=10000000} (and a larger
+ * {@code -jvmArgs -Xmx}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class LoanSearchBenchmark {
+
+	private static final String OR_QUERY = LoanRepository.LOAN_DTO_PROJECTION + " from Loan as l join l.book as b "
+			+ " where b.isbn = :isbn or l.customer = :customer ";
+
+	@Param({ "1000000" })
+	public int loans;
+
+	@Param({ "50000" })
+	public int customers;
+
+	private final LibraryContext library = new LibraryContext();
+
+	private LoanRepository repository;
+
+	private EntityManager entityManager;
+
+	private PageRequest pageRequest;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		library.books = 10_000;
+		library.loansPerBook = 0;
+		library.boot("spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE");
+
+		JdbcTemplate jdbc = library.bean(JdbcTemplate.class);
+		long firstBook = jdbc.queryForObject("select min(id) from book", Long.class);
+		long lastBook = jdbc.queryForObject("select max(id) from book", Long.class);
+		if (lastBook - firstBook + 1 != library.books) {
+			throw new IllegalStateException("Expected consecutive book ids");
+		}
+
+		jdbc.update("insert into loan (id, customer, customer_email, id_book, loan_date, returned, version) "
+				+ " select 1000000000 + x, concat('Customer ', mod(x, ?)), 'customer@email.com', ? + mod(x, ?), "
+				+ " current_date, true, 0 from system_range(1, ?)", customers, firstBook, library.books, loans);
+		jdbc.execute("analyze");
+
+		repository = library.bean(LoanRepository.class);
+		entityManager = library.bean(EntityManagerFactory.class).createEntityManager();
+		pageRequest = PageRequest.of(0, 20);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		entityManager.close();
+		library.stop();
+	}
+
+	@Benchmark
+	public List<LoanDTO> orQuery() {
+		return entityManager.createQuery(OR_QUERY + " order by l.id ", LoanDTO.class)
+				.setParameter("isbn", "isbn-7").setParameter("customer", "Customer 7")
+				.setMaxResults(pageRequest.getPageSize()).getResultList();
+	}
+
+	@Benchmark
+	public List<LoanDTO> mergedLookups() {
+		return repository.findByBookIsbnOrCustomer("isbn-7", "Customer 7", pageRequest);
+	}
+
+	@Benchmark
+	public List<LoanDTO> isbnOnly() {
+		return repository.findByBookIsbnOrCustomer("isbn-7", null, pageRequest);
+	}
+
+}
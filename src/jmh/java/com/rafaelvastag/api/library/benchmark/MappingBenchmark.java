@@ -0,0 +1,83 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rafaelvastag.api.library.dto.BookDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.mapper.BookMapper;
+import com.rafaelvastag.api.library.mapper.BookMapperImpl;
+import com.rafaelvastag.api.library.mapper.LoanMapper;
+import com.rafaelvastag.api.library.mapper.LoanMapperImpl;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+
+/**
+ * Maps a page of loans the way the controllers do, comparing the reflective
+ * ModelMapper bean the application used to expose with the generated mappers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+	@Param({ "100" })
+	private int pageSize;
+
+	private ModelMapper modelMapper;
+
+	private LoanMapper loanMapper;
+
+	private List<Loan> loans;
+
+	@Setup
+	public void setUp() {
+		BookMapper bookMapper = new BookMapperImpl();
+
+		this.modelMapper = new ModelMapper();
+		this.loanMapper = new LoanMapperImpl(bookMapper);
+		this.loans = new ArrayList<>(pageSize);
+
+		for (long i = 0; i < pageSize; i++) {
+			Book book = Book.builder().id(i).title("Title " + i).author("Author " + i).isbn("isbn-" + i).build();
+			loans.add(Loan.builder().id(i).customer("Customer " + i).emailCustomer("customer" + i + "@email.com")
+					.book(book).loanDate(LocalDate.now()).returned(false).build());
+		}
+	}
+
+	@Benchmark
+	public List<LoanDTO> modelMapper() {
+		return loans.stream().map(entity -> {
+			BookDTO bookDTO = modelMapper.map(entity.getBook(), BookDTO.class);
+			LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
+			loanDTO.setBook(bookDTO);
+
+			return loanDTO;
+		}).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<LoanDTO> generatedMapper() {
+		return loans.stream().map(loanMapper::toDto).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.rafaelvastag.api.library.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.service.BookService;
+import com.rafaelvastag.api.library.service.LoanService;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+	private BookService bookService;
+
+	private LoanService loanService;
+
+	private Book filter;
+
+	private Book loanedBook;
+
+	@Setup
+	public void setUp(LibraryContext library) {
+		this.bookService = library.bean(BookService.class);
+		this.loanService = library.bean(LoanService.class);
+		this.filter = Book.builder().title("title 1").author("author").build();
+		this.loanedBook = bookService.findBookByIsbn("isbn-0").get();
+	}
+
+	@Benchmark
+	public Page<Book> findBooksByExample() {
+		return bookService.find(filter, PageRequest.of(0, 20));
+	}
+
+	/**
+	 * Loans are saved as already returned so every invocation goes through the
+	 * open-loan check and the insert without being rejected.
+	 */
+	@Benchmark
+	public Loan saveLoan() {
+		Loan loan = Loan.builder().book(loanedBook).customer("Customer").emailCustomer("customer@email.com")
+				.loanDate(LocalDate.now()).returned(true).build();
+
+		return loanService.save(loan);
+	}
+
+}
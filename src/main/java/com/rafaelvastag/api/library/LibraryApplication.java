@@ -1,21 +1,14 @@
 package com.rafaelvastag.api.library;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
-import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableScheduling
 public class LibraryApplication extends SpringBootServletInitializer {
-		
-	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
-	}
-	
+
 	public static void main(String[] args) {
 		SpringApplication.run(LibraryApplication.class, args);
 	}
@@ -0,0 +1,104 @@
+package com.rafaelvastag.api.library.config;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheManager;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.rafaelvastag.api.library.model.entity.Book;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+
+@Configuration
+public class CacheConfig {
+
+	public static final String BOOK_ISBN_CACHE = "book.isbn";
+
+	@Value("${application.cache.book-isbn.maximum-size}")
+	private long bookIsbnMaximumSize;
+
+	@Value("${application.cache.book-isbn.expire-after-write-seconds}")
+	private long bookIsbnExpireAfterWriteSeconds;
+
+	@Value("${application.cache.book-entity.maximum-size}")
+	private long bookEntityMaximumSize;
+
+	@Value("${application.cache.book-query.maximum-size}")
+	private long bookQueryMaximumSize;
+
+	/**
+	 * Bounded ISBN lookup cache used by the book service. Stats are recorded so
+	 * hits, misses and evictions show up under the actuator "cache.*" metrics.
+	 */
+	@Bean
+	public Cache<String, Optional<Book>> bookIsbnCache(MeterRegistry meterRegistry) {
+		Cache<String, Optional<Book>> cache = Caffeine.newBuilder()
+				.maximumSize(bookIsbnMaximumSize)
+				.expireAfterWrite(bookIsbnExpireAfterWriteSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+
+		return CaffeineCacheMetrics.monitor(meterRegistry, cache, BOOK_ISBN_CACHE);
+	}
+
+	/**
+	 * JCache manager behind the Hibernate second-level cache. Every region is
+	 * created here with its size limit, so Hibernate is told to fail on an
+	 * unknown one. The update-timestamps region is unbounded on purpose: it
+	 * holds one entry per table and evicting it would let the query cache
+	 * serve stale results.
+	 */
+	@Bean(destroyMethod = "close")
+	public CacheManager hibernateCacheManager(MeterRegistry meterRegistry) {
+		CacheManager cacheManager = new CaffeineCachingProvider().getCacheManager();
+
+		createRegion(cacheManager, meterRegistry, Book.CACHE_REGION, OptionalLong.of(bookEntityMaximumSize));
+		createRegion(cacheManager, meterRegistry, Book.ISBN_QUERY_CACHE_REGION, OptionalLong.of(bookQueryMaximumSize));
+		createRegion(cacheManager, meterRegistry, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+				OptionalLong.of(bookQueryMaximumSize));
+		createRegion(cacheManager, meterRegistry, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+				OptionalLong.empty());
+
+		return cacheManager;
+	}
+
+	/**
+	 * Turns the second-level and query caches on only when this configuration
+	 * is loaded, so JPA slice tests keep running without them.
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager hibernateCacheManager) {
+		return properties -> {
+			properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+			properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+			properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+			properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+			properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+			properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+		};
+	}
+
+	private static void createRegion(CacheManager cacheManager, MeterRegistry meterRegistry, String name,
+			OptionalLong maximumSize) {
+		CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+		configuration.setMaximumSize(maximumSize);
+		configuration.setStatisticsEnabled(true);
+
+		JCacheMetrics.monitor(meterRegistry, cacheManager.createCache(name, configuration));
+	}
+}
@@ -0,0 +1,71 @@
+package com.rafaelvastag.api.library.config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opt-in mode ({@code application.datasource.replica.enabled=true}) that puts
+ * the primary from {@code spring.datasource.*} and the replicas listed in
+ * {@code application.datasource.replica.urls}, with the same credentials,
+ * behind a {@link ReadWriteRoutingDataSource}. Locally two in-memory H2
+ * databases do, the replica loaded with the primary's schema.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.datasource.replica.enabled", havingValue = "true")
+@Slf4j
+public class DataSourceRoutingConfig implements DisposableBean {
+
+	@Value("${application.datasource.replica.urls}")
+	private List<String> replicaUrls;
+
+	private ReadWriteRoutingDataSource routingDataSource;
+
+	/**
+	 * The lazy proxy defers the routing until a statement runs, after the
+	 * transaction manager has marked the transaction read-only. The routing
+	 * data source is not a bean of its own, so the schema initializer only
+	 * ever sees this one.
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(DataSourceProperties properties, ReplicaReadGuard replicaReads) {
+		DataSource primary = properties.initializeDataSourceBuilder().build();
+
+		List<DataSource> replicas = new ArrayList<>();
+		for (String url : replicaUrls) {
+			replicas.add(DataSourceBuilder.create().driverClassName(properties.determineDriverClassName()).url(url)
+					.username(properties.determineUsername()).password(properties.determinePassword()).build());
+		}
+		log.info("Routing read-only transactions to {} replicas", replicas.size());
+
+		routingDataSource = new ReadWriteRoutingDataSource(primary, replicas, replicaReads);
+		routingDataSource.afterPropertiesSet();
+
+		return new LazyConnectionDataSourceProxy(routingDataSource);
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		if (routingDataSource != null) {
+			routingDataSource.close();
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.rafaelvastag.api.library.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Application metrics on top of the actuator ones: repository method timers,
+ * SQL statements per request. Histograms and SLO buckets are configured under
+ * {@code management.metrics.distribution.*}.
+ */
+@Configuration
+public class MetricsConfig {
+
+	/**
+	 * Static so the post processor is registered before the repository factory
+	 * beans are created; the registry is looked up lazily on the first call.
+	 */
+	@Bean
+	public static BeanPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+		return new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) {
+				if (bean instanceof RepositoryFactoryBeanSupport) {
+					((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(
+							factory -> factory.addRepositoryProxyPostProcessor((proxyFactory, information) -> proxyFactory
+									.addAdvice(new RepositoryMetricsInterceptor(meterRegistry,
+											information.getRepositoryInterface()))));
+				}
+				return bean;
+			}
+		};
+	}
+
+	@Bean
+	public HibernatePropertiesCustomizer sqlStatementCounterCustomizer() {
+		return properties -> properties.put("hibernate.session_factory.statement_inspector", new SqlStatementCounter());
+	}
+
+	@Bean
+	public WebMvcConfigurer sqlStatementMetricsConfigurer(MeterRegistry meterRegistry) {
+		return new WebMvcConfigurer() {
+
+			@Override
+			public void addInterceptors(InterceptorRegistry registry) {
+				registry.addInterceptor(new SqlStatementMetricsInterceptor(meterRegistry)).addPathPatterns("/api/**");
+			}
+		};
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.rafaelvastag.api.library.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
+
+/**
+ * Sends the read-only transactions the {@link ReplicaReadGuard} lets through
+ * to the replicas, in turn, and everything else to the primary. The lookup
+ * happens when the first statement needs a connection, so it must sit behind
+ * a lazy connection proxy.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+	static final String PRIMARY = "primary";
+
+	private final List<DataSource> dataSources = new ArrayList<>();
+
+	private final List<String> replicaKeys = new ArrayList<>();
+
+	private final AtomicInteger nextReplica = new AtomicInteger();
+
+	private final ReplicaReadGuard replicaReads;
+
+	public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, ReplicaReadGuard replicaReads) {
+		this.replicaReads = replicaReads;
+
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(PRIMARY, primary);
+		dataSources.add(primary);
+		for (int i = 0; i < replicas.size(); i++) {
+			String key = "replica-" + i;
+			targets.put(key, replicas.get(i));
+			replicaKeys.add(key);
+			dataSources.add(replicas.get(i));
+		}
+
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (replicaKeys.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+				|| !replicaReads.isReplicaRead()) {
+			return PRIMARY;
+		}
+
+		return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (DataSource dataSource : dataSources) {
+			if (dataSource instanceof Closeable) {
+				((Closeable) dataSource).close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.rafaelvastag.api.library.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every call made through a Spring Data repository proxy as
+ * {@code repository.invocations}, tagged with the repository, the method and
+ * the exception thrown (if any). Stream results are timed until the stream is
+ * opened, not until it is consumed.
+ */
+public class RepositoryMetricsInterceptor implements MethodInterceptor {
+
+	public static final String METRIC_NAME = "repository.invocations";
+
+	private final ObjectProvider<MeterRegistry> meterRegistry;
+
+	private final String repository;
+
+	public RepositoryMetricsInterceptor(ObjectProvider<MeterRegistry> meterRegistry, Class<?> repositoryInterface) {
+		this.meterRegistry = meterRegistry;
+		this.repository = repositoryInterface.getSimpleName();
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		MeterRegistry registry = meterRegistry.getIfAvailable();
+		if (registry == null) {
+			return invocation.proceed();
+		}
+
+		Timer.Sample sample = Timer.start(registry);
+		String exception = "none";
+		try {
+			return invocation.proceed();
+		} catch (Throwable ex) {
+			exception = ex.getClass().getSimpleName();
+			throw ex;
+		} finally {
+			sample.stop(Timer.builder(METRIC_NAME)
+					.description("Time spent in Spring Data repository methods")
+					.tag("repository", repository)
+					.tag("method", invocation.getMethod().getName())
+					.tag("exception", exception)
+					.register(registry));
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.rafaelvastag.api.library.config;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Records how many SQL statements each request issued as
+ * {@code http.server.requests.sql.statements}, tagged like
+ * {@code http.server.requests} with the method and URI template.
+ */
+public class SqlStatementMetricsInterceptor implements HandlerInterceptor {
+
+	public static final String METRIC_NAME = "http.server.requests.sql.statements";
+
+	private final MeterRegistry meterRegistry;
+
+	public SqlStatementMetricsInterceptor(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		SqlStatementCounter.reset();
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+		DistributionSummary.builder(METRIC_NAME)
+				.description("SQL statements issued while serving a request")
+				.baseUnit("statements")
+				.tag("method", request.getMethod())
+				.tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+				.register(meterRegistry)
+				.record(SqlStatementCounter.current());
+	}
+
+}
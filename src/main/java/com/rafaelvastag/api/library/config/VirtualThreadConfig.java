@@ -0,0 +1,78 @@
+package com.rafaelvastag.api.library.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opt-in mode ({@code application.threads.virtual=true}) that runs Tomcat
+ * requests and the {@code @Scheduled} jobs on virtual threads. The code is
+ * still compiled for Java 8, so the JDK 21 API is looked up reflectively and
+ * startup fails fast on an older runtime.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.threads.virtual", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfig implements SchedulingConfigurer {
+
+	@Value("${application.threads.scheduler-pool-size}")
+	private int schedulerPoolSize;
+
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService virtualThreadRequestExecutor() {
+		try {
+			Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			log.info("Serving requests on virtual threads");
+
+			return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalStateException("application.threads.virtual needs Java 21 or newer", ex);
+		}
+	}
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(
+			ExecutorService virtualThreadRequestExecutor) {
+		return protocolHandler -> protocolHandler.setExecutor(virtualThreadRequestExecutor);
+	}
+
+	/**
+	 * The scheduler keeps a small pool of timer threads, but every one of them
+	 * is virtual, so a job blocked on the database or SMTP holds no carrier.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ScheduledExecutorService virtualThreadScheduler() {
+		return Executors.newScheduledThreadPool(schedulerPoolSize, virtualThreadFactory("scheduling-"));
+	}
+
+	@Override
+	public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+		taskRegistrar.setTaskScheduler(new ConcurrentTaskScheduler(virtualThreadScheduler()));
+	}
+
+	private static ThreadFactory virtualThreadFactory(String prefix) {
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalStateException("application.threads.virtual needs Java 21 or newer", ex);
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.rafaelvastag.api.library.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The requested book ids split by whether they have an open loan. Ids of books
+ * that do not exist are reported as available.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookAvailabilityDTO {
+
+	private List<Long> available;
+
+	private List<Long> loaned;
+
+}
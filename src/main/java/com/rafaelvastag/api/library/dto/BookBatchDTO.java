@@ -0,0 +1,24 @@
+package com.rafaelvastag.api.library.dto;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBatchDTO {
+
+	@NotEmpty
+	@Size(max = 10000)
+	private List<@Valid BookDTO> books;
+
+}
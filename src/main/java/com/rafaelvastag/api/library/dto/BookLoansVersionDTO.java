@@ -0,0 +1,29 @@
+package com.rafaelvastag.api.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Everything the loans of a book listing depends on: the book version plus the
+ * count, highest id and summed versions of its loans. Any insert, update or
+ * delete of one of those rows changes at least one of the numbers.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookLoansVersionDTO {
+
+	private Long bookVersion;
+
+	private Long loans;
+
+	private Long lastLoanId;
+
+	private Long loanVersions;
+
+	public String toETag() {
+		return "\"" + bookVersion + "." + loans + "." + lastLoanId + "." + loanVersions + "\"";
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.rafaelvastag.api.library.dto;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Size;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The fields of a book to change; the ones left out keep their value.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookPatchDTO {
+
+	@Size(min = 1)
+	private String title;
+
+	@Size(min = 1)
+	private String author;
+
+	@AssertTrue(message = "Title or author required")
+	private boolean isAnyGiven() {
+		return title != null || author != null;
+	}
+
+}
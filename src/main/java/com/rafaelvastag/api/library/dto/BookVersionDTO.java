@@ -0,0 +1,19 @@
+package com.rafaelvastag.api.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A book's id and version, enough to tell whether a copy of it is current.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookVersionDTO {
+
+	private Long id;
+
+	private Long version;
+
+}
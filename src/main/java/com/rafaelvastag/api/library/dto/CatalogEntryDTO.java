@@ -0,0 +1,28 @@
+package com.rafaelvastag.api.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One book as stored in the catalog snapshot: the lookup fields plus the
+ * version used to tell whether the database copy changed since.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CatalogEntryDTO {
+
+	private Long id;
+
+	private Long version;
+
+	private String isbn;
+
+	private String title;
+
+	private String author;
+
+}
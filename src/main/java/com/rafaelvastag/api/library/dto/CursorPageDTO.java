@@ -0,0 +1,33 @@
+package com.rafaelvastag.api.library.dto;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Page of a keyset (cursor) listing. There is no total count: clients follow
+ * {@code next} until it is null.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+
+	private List<T> content;
+
+	private int size;
+
+	private String next;
+
+	public <R> CursorPageDTO<R> map(Function<? super T, ? extends R> converter) {
+		List<R> converted = content.stream().map(converter).collect(Collectors.toList());
+		return new CursorPageDTO<>(converted, size, next);
+	}
+
+}
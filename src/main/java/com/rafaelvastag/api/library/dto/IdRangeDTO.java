@@ -0,0 +1,23 @@
+package com.rafaelvastag.api.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An inclusive id range; both ends are null when there is nothing in it.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdRangeDTO {
+
+	private Long first;
+
+	private Long last;
+
+	public boolean isEmpty() {
+		return first == null || last == null;
+	}
+
+}
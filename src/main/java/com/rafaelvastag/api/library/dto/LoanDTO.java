@@ -26,4 +26,13 @@ public class LoanDTO {
 	
 	private BookDTO book;
 
+	/**
+	 * Flat constructor used by JPQL constructor expressions, so listings are
+	 * projected straight from the loan/book join without loading entities.
+	 */
+	public LoanDTO(Long id, String isbn, String customerName, String emailCustomer, Long bookId, String bookTitle,
+			String bookAuthor) {
+		this(id, isbn, customerName, emailCustomer, new BookDTO(bookId, bookTitle, bookAuthor, isbn));
+	}
+
 }
@@ -0,0 +1,35 @@
+package com.rafaelvastag.api.library.dto;
+
+import java.util.List;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Loans to return at once, by loan id and/or by the ISBN of the loaned book.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanReturnsDTO {
+
+	@Size(max = 10000)
+	private List<@NotNull Long> loanIds;
+
+	@Size(max = 10000)
+	private List<@NotBlank String> isbns;
+
+	@AssertTrue(message = "Loan ids or ISBNs required")
+	private boolean isAnyGiven() {
+		return loanIds != null && !loanIds.isEmpty() || isbns != null && !isbns.isEmpty();
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.rafaelvastag.api.library.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanReturnsResultDTO {
+
+	private List<Long> returned;
+
+	private List<Long> alreadyReturned;
+
+	private List<Long> notFound;
+
+	private List<String> isbnsNotLoaned;
+
+}
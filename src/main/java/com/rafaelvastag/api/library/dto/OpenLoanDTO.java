@@ -0,0 +1,21 @@
+package com.rafaelvastag.api.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A loan with the book it holds, which is null once the loan is returned.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OpenLoanDTO {
+
+	private Long id;
+
+	private Long openBookId;
+
+	private String isbn;
+
+}
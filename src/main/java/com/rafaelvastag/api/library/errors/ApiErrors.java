@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -22,6 +23,10 @@ public class ApiErrors {
 		this.errors = Arrays.asList(ex.getMessage());
 	}
 	
+	public ApiErrors(OptimisticLockingFailureException ex) {
+		this.errors = Arrays.asList("Changed concurrently, try again");
+	}
+
 	public ApiErrors(ResponseStatusException ex) {
 		this.errors = Arrays.asList(ex.getReason());
 	}
@@ -0,0 +1,35 @@
+package com.rafaelvastag.api.library.mapper;
+
+import java.util.List;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import com.rafaelvastag.api.library.dto.BookDTO;
+import com.rafaelvastag.api.library.dto.BookPatchDTO;
+import com.rafaelvastag.api.library.dto.CatalogEntryDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+
+@Mapper(componentModel = "spring")
+public interface BookMapper {
+
+	BookDTO toDto(Book book);
+
+	@Mapping(target = "loans", ignore = true)
+	@Mapping(target = "version", ignore = true)
+	Book toEntity(BookDTO dto);
+
+	@Mapping(target = "loans", ignore = true)
+	Book toEntity(CatalogEntryDTO entry);
+
+	@Mapping(target = "id", ignore = true)
+	@Mapping(target = "isbn", ignore = true)
+	@Mapping(target = "loans", ignore = true)
+	@Mapping(target = "version", ignore = true)
+	Book toEntity(BookPatchDTO patch);
+
+	List<BookDTO> toDtos(List<Book> books);
+
+	List<Book> toEntities(List<BookDTO> dtos);
+
+}
@@ -0,0 +1,34 @@
+package com.rafaelvastag.api.library.mapper;
+
+import org.mapstruct.BeanMapping;
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.dto.ReturnedLoanDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+
+@Mapper(componentModel = "spring", uses = BookMapper.class, injectionStrategy = InjectionStrategy.CONSTRUCTOR)
+public interface LoanMapper {
+
+	@Mapping(target = "isbn", source = "book.isbn")
+	@Mapping(target = "customerName", source = "customer")
+	LoanDTO toDto(Loan loan);
+
+	@Mapping(target = "id", ignore = true)
+	@Mapping(target = "customer", source = "dto.customerName")
+	@Mapping(target = "book", source = "book")
+	@Mapping(target = "loanDate", expression = "java(java.time.LocalDate.now())")
+	@Mapping(target = "returned", ignore = true)
+	@Mapping(target = "openBookId", ignore = true)
+	@Mapping(target = "version", ignore = true)
+	Loan toEntity(LoanDTO dto, Book book);
+
+	@BeanMapping(ignoreByDefault = true)
+	@Mapping(target = "returned", source = "returned")
+	void applyReturn(ReturnedLoanDTO dto, @MappingTarget Loan loan);
+
+}
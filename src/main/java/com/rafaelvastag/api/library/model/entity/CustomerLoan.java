@@ -0,0 +1,70 @@
+package com.rafaelvastag.api.library.model.entity;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.springframework.data.domain.Persistable;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Read model of a loan for the customer history: one row per loan, keyed by
+ * the loan id, with the book fields copied in so the history is read from
+ * one index range without joins. Written only by the loan and book services.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "customer_loan", indexes = {
+		@Index(name = "idx_customer_loan_customer", columnList = "customer, loan_id"),
+		@Index(name = "idx_customer_loan_book", columnList = "book_id") })
+public class CustomerLoan implements Persistable<Long> {
+
+	@Id
+	@Column(name = "loan_id")
+	private Long id;
+
+	@Column(length = 100, nullable = false)
+	private String customer;
+
+	@Column(name = "customer_email")
+	private String emailCustomer;
+
+	@Column(name = "book_id")
+	private Long bookId;
+
+	@Column
+	private String isbn;
+
+	@Column
+	private String title;
+
+	@Column
+	private String author;
+
+	@Column
+	private LocalDate loanDate;
+
+	@Column
+	private Boolean returned;
+
+	/**
+	 * Rows are only ever saved when their loan is created, so saving persists
+	 * straight away instead of merging.
+	 */
+	@Override
+	public boolean isNew() {
+		return true;
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.rafaelvastag.api.library.model.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One id range of a job run. Instances claim it, move its checkpoint past
+ * each processed chunk and heartbeat while they do; a claim whose heartbeat
+ * goes stale can be taken over from the checkpoint.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "job_partition",
+		uniqueConstraints = @UniqueConstraint(name = "uk_job_partition_run", columnNames = { "job_name", "run_key", "partition_no" }),
+		indexes = @Index(name = "idx_job_partition_job_status", columnList = "job_name, status"))
+public class JobPartition {
+
+	public enum Status {
+		PENDING, CLAIMED, DONE
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@Column(name = "job_name", length = 50, nullable = false)
+	private String jobName;
+
+	@Column(name = "run_key", length = 50, nullable = false)
+	private String runKey;
+
+	@Column(name = "partition_no", nullable = false)
+	private int partitionNo;
+
+	@Column(nullable = false)
+	private long firstId;
+
+	@Column(nullable = false)
+	private long lastId;
+
+	/**
+	 * The last id processed; {@code firstId - 1} before the first chunk.
+	 */
+	@Column(nullable = false)
+	private long checkpointId;
+
+	@Enumerated(EnumType.STRING)
+	@Column(length = 10, nullable = false)
+	private Status status;
+
+	@Column(length = 100)
+	private String owner;
+
+	@Column
+	private LocalDateTime heartbeatAt;
+
+}
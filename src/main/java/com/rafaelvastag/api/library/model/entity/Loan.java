@@ -4,11 +4,19 @@ import java.time.LocalDate;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -20,10 +28,16 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = Loan.OPEN_BOOK_CONSTRAINT, columnNames = "open_book_id"),
+		indexes = { @Index(name = "idx_loan_customer", columnList = "customer, id"),
+				@Index(name = "idx_loan_book", columnList = "id_book, id") })
 public class Loan {
 
+	public static final String OPEN_BOOK_CONSTRAINT = "uk_loan_open_book";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+	@SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
 	private Long id;
 	
 	@Column(length = 100)
@@ -33,7 +47,7 @@ public class Loan {
 	private String emailCustomer;	
 	
 	@JoinColumn(name = "id_book")
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	private Book book;
 	
 	@Column
@@ -41,4 +55,21 @@ public class Loan {
 	
 	@Column
 	private Boolean returned;
+
+	@Version
+	private Long version;
+
+	/**
+	 * Copy of the book id while the loan is open and null once it is returned.
+	 * The unique constraint on it lets the database reject a second open loan
+	 * of the same book.
+	 */
+	@Column(name = "open_book_id")
+	private Long openBookId;
+
+	@PrePersist
+	@PreUpdate
+	void updateOpenBookId() {
+		this.openBookId = Boolean.TRUE.equals(returned) || book == null ? null : book.getId();
+	}
 }
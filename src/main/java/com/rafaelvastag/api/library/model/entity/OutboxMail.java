@@ -0,0 +1,64 @@
+package com.rafaelvastag.api.library.model.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "outbox_mail", indexes = @Index(name = "idx_outbox_mail_status_next_attempt", columnList = "status, next_attempt_at"))
+public class OutboxMail {
+
+	public enum Status {
+		PENDING, SENDING, SENT, FAILED
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@Column(nullable = false)
+	private String recipient;
+
+	@Column
+	private String subject;
+
+	@Column(length = 2000)
+	private String message;
+
+	@Enumerated(EnumType.STRING)
+	@Column(length = 10, nullable = false)
+	private Status status;
+
+	@Column
+	private int attempts;
+
+	@Column(name = "next_attempt_at")
+	private LocalDateTime nextAttemptAt;
+
+	@Column
+	private LocalDateTime claimedAt;
+
+	@Column
+	private LocalDateTime sentAt;
+
+	@Column(length = 500)
+	private String lastError;
+
+}
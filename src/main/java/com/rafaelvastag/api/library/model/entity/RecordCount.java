@@ -0,0 +1,55 @@
+package com.rafaelvastag.api.library.model.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A row count kept up to date by the services that insert and delete the
+ * counted rows, so paged endpoints can fill in their totals without a
+ * {@code count(*)}. A missing row means zero.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "record_count")
+public class RecordCount {
+
+	public static final String BOOKS = "books";
+
+	public static final String LOANS = "loans";
+
+	public static final String BOOK_LOANS_PREFIX = "book.loans:";
+
+	public static final String ISBN_LOANS_PREFIX = "isbn.loans:";
+
+	public static final String CUSTOMER_LOANS_PREFIX = "customer.loans:";
+
+	@Id
+	@Column(length = 320)
+	private String name;
+
+	@Column(nullable = false)
+	private long total;
+
+	public static String bookLoans(Long bookId) {
+		return BOOK_LOANS_PREFIX + bookId;
+	}
+
+	public static String isbnLoans(String isbn) {
+		return ISBN_LOANS_PREFIX + isbn;
+	}
+
+	public static String customerLoans(String customer) {
+		return CUSTOMER_LOANS_PREFIX + customer;
+	}
+
+}
@@ -1,15 +1,62 @@
 package com.rafaelvastag.api.library.model.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import com.rafaelvastag.api.library.dto.BookDTO;
+import com.rafaelvastag.api.library.dto.BookVersionDTO;
+import com.rafaelvastag.api.library.dto.CatalogEntryDTO;
 import com.rafaelvastag.api.library.model.entity.Book;
 
-public interface BookRepository extends JpaRepository<Book, Long>{
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 
 	boolean existsByIsbn(String isbn);
 
+	/**
+	 * One page of the catalog without a count query.
+	 */
+	List<Book> findAllBy(Pageable pageable);
+
+	@QueryHints({ @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = Book.ISBN_QUERY_CACHE_REGION) })
 	Optional<Book> findByIsbn(String isbn);
 
+	@Query("select b.version from Book b where b.id = :id")
+	Optional<Long> findVersionById(@Param("id") Long id);
+
+	/**
+	 * Forward-only cursor over every book for exports. Must be consumed inside a
+	 * transaction and closed by the caller.
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+	@Query("select new com.rafaelvastag.api.library.dto.BookDTO(b.id, b.title, b.author, b.isbn) "
+			+ "from Book b order by b.id")
+	Stream<BookDTO> streamAllForExport();
+
+	/**
+	 * Forward-only cursor over the catalog snapshot fields, ordered by id. Must
+	 * be consumed inside a transaction and closed by the caller.
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+	@Query("select new com.rafaelvastag.api.library.dto.CatalogEntryDTO(b.id, b.version, b.isbn, b.title, b.author) "
+			+ "from Book b order by b.id")
+	Stream<CatalogEntryDTO> streamCatalog();
+
+	@Query("select new com.rafaelvastag.api.library.dto.BookVersionDTO(b.id, b.version) from Book b "
+			+ "where b.id > :afterId order by b.id")
+	List<BookVersionDTO> findVersionsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+	@Query("select b.isbn from Book b where b.isbn in :isbns")
+	List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
 }
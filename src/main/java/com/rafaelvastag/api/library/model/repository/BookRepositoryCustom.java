@@ -0,0 +1,21 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+
+public interface BookRepositoryCustom {
+
+	CursorPageDTO<Book> findAfter(Example<Book> example, Keyset keyset, int size);
+
+	List<Book> findContent(Example<Book> example, Pageable pageable, int limit);
+
+	List<Book> insertAll(List<Book> books);
+
+	int patch(Long id, Long version, String title, String author);
+
+}
@@ -0,0 +1,174 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.query.NativeQuery;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.convert.QueryByExamplePredicateBuilder;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	/**
+	 * Query space of the patch statement. Hibernate evicts the cache regions of
+	 * the entities whose tables a native update touches, every book included
+	 * unless the statement names its spaces; this one names none, so only the
+	 * patched book is evicted.
+	 */
+	private static final String PATCH_QUERY_SPACE = "book_patch";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${application.books.batch.insert-size}")
+	private int insertBatchSize;
+
+	@Override
+	public CursorPageDTO<Book> findAfter(Example<Book> example, Keyset keyset, int size) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Book> query = cb.createQuery(Book.class);
+		Root<Book> book = query.from(Book.class);
+		Path<?> sortPath = book.get(keyset.getProperty());
+		Path<Long> idPath = book.get(Keyset.ID);
+
+		List<Predicate> predicates = new ArrayList<>();
+		Predicate byExample = QueryByExamplePredicateBuilder.getPredicate(book, cb, example);
+		Predicate afterKeyset = keyset.toPredicate(cb, sortPath, idPath);
+		if (byExample != null) {
+			predicates.add(byExample);
+		}
+		if (afterKeyset != null) {
+			predicates.add(afterKeyset);
+		}
+
+		query.select(book).where(predicates.toArray(new Predicate[0])).orderBy(keyset.toOrders(cb, sortPath, idPath));
+
+		List<Book> rows = entityManager.createQuery(query).setMaxResults(size + 1).getResultList();
+
+		if (rows.size() <= size) {
+			return new CursorPageDTO<>(rows, size, null);
+		}
+
+		List<Book> content = new ArrayList<>(rows.subList(0, size));
+		Book last = content.get(size - 1);
+		Object lastValue = PropertyAccessorFactory.forBeanPropertyAccess(last).getPropertyValue(keyset.getProperty());
+
+		return new CursorPageDTO<>(content, size, keyset.next(lastValue, last.getId()).encode());
+	}
+
+	/**
+	 * Up to {@code limit} books matching the example from the offset and in the
+	 * order of {@code pageable}, without a count query.
+	 */
+	@Override
+	public List<Book> findContent(Example<Book> example, Pageable pageable, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Book> query = cb.createQuery(Book.class);
+		Root<Book> book = query.from(Book.class);
+
+		Predicate byExample = QueryByExamplePredicateBuilder.getPredicate(book, cb, example);
+		if (byExample != null) {
+			query.where(byExample);
+		}
+		query.select(book).orderBy(QueryUtils.toOrders(pageable.getSort(), book, cb));
+
+		return entityManager.createQuery(query).setFirstResult((int) pageable.getOffset()).setMaxResults(limit)
+				.getResultList();
+	}
+
+	/**
+	 * Sets only the given fields, and bumps the version, in one statement that
+	 * matches the book only while it is still at {@code version}. Returns the
+	 * number of rows updated: zero when the book is missing or has changed.
+	 */
+	@Override
+	@Transactional
+	public int patch(Long id, Long version, String title, String author) {
+		StringBuilder sql = new StringBuilder("update book set version = version + 1");
+		if (title != null) {
+			sql.append(", title = :title");
+		}
+		if (author != null) {
+			sql.append(", author = :author");
+		}
+		sql.append(" where id = :id and version = :version");
+
+		NativeQuery<?> query = entityManager.createNativeQuery(sql.toString()).unwrap(NativeQuery.class)
+				.addSynchronizedQuerySpace(PATCH_QUERY_SPACE);
+		query.setParameter("id", id).setParameter("version", version);
+		if (title != null) {
+			query.setParameter("title", title);
+		}
+		if (author != null) {
+			query.setParameter("author", author);
+		}
+
+		int updated = query.executeUpdate();
+		if (updated > 0) {
+			evict(id);
+		}
+
+		return updated;
+	}
+
+	/**
+	 * Persists the books flushing every {@code insert-size} rows, so Hibernate
+	 * sends each slice as one JDBC batch and the persistence context never holds
+	 * more than one slice.
+	 */
+	@Override
+	@Transactional
+	public List<Book> insertAll(List<Book> books) {
+		for (int i = 0; i < books.size(); i++) {
+			entityManager.persist(books.get(i));
+
+			if ((i + 1) % insertBatchSize == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+		entityManager.flush();
+		entityManager.clear();
+
+		return books;
+	}
+
+	/**
+	 * Drops the book from the second-level cache now, so this transaction reads
+	 * the patched row, and again after commit, in case another one cached the
+	 * old row in between.
+	 */
+	private void evict(Long id) {
+		Cache cache = entityManager.getEntityManagerFactory().getCache();
+		cache.evict(Book.class, id);
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					cache.evict(Book.class, id);
+				}
+			});
+		}
+	}
+
+}
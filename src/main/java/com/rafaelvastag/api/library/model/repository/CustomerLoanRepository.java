@@ -0,0 +1,43 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.CustomerLoan;
+
+public interface CustomerLoanRepository extends JpaRepository<CustomerLoan, Long> {
+
+	@Query(" select new com.rafaelvastag.api.library.dto.LoanDTO( c.id, c.isbn, c.customer, c.emailCustomer, "
+			+ " c.bookId, c.title, c.author ) from CustomerLoan c where c.customer = :customer ")
+	List<LoanDTO> findByCustomer(@Param("customer") String customer, Pageable pageable);
+
+	@Modifying
+	@Query(" update CustomerLoan c set c.returned = :returned where c.id = :loanId ")
+	int updateReturned(@Param("loanId") Long loanId, @Param("returned") Boolean returned);
+
+	@Modifying
+	@Query(" update CustomerLoan c set c.returned = true where c.id in :loanIds ")
+	int markReturned(@Param("loanIds") Collection<Long> loanIds);
+
+	@Modifying
+	@Query(" update CustomerLoan c set c.title = :title, c.author = :author where c.bookId = :bookId ")
+	int updateBook(@Param("bookId") Long bookId, @Param("title") String title, @Param("author") String author);
+
+	Optional<CustomerLoan> findFirstBy();
+
+	@Modifying
+	@Query(value = " insert into customer_loan "
+			+ " (loan_id, customer, customer_email, book_id, isbn, title, author, loan_date, returned) "
+			+ " select l.id, l.customer, l.customer_email, b.id, b.isbn, b.title, b.author, l.loan_date, l.returned "
+			+ " from loan l join book b on b.id = l.id_book where l.customer is not null ", nativeQuery = true)
+	int backfill();
+
+}
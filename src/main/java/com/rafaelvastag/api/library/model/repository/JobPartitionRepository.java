@@ -0,0 +1,55 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.rafaelvastag.api.library.model.entity.JobPartition;
+import com.rafaelvastag.api.library.model.entity.JobPartition.Status;
+
+public interface JobPartitionRepository extends JpaRepository<JobPartition, Long> {
+
+	boolean existsByJobNameAndRunKey(String jobName, String runKey);
+
+	@Query(" select p.id from JobPartition p where p.jobName = :jobName "
+			+ " and ( p.status = :pending or ( p.status = :claimed and p.heartbeatAt < :staleBefore ) ) order by p.id ")
+	List<Long> findClaimableIds(@Param("jobName") String jobName, @Param("pending") Status pending,
+			@Param("claimed") Status claimed, @Param("staleBefore") LocalDateTime staleBefore, Pageable pageable);
+
+	/**
+	 * Claims a pending partition, or one whose owner stopped heartbeating.
+	 * Returns 0 when another instance claimed it first.
+	 */
+	@Transactional
+	@Modifying
+	@Query(" update JobPartition p set p.status = :claimed, p.owner = :owner, p.heartbeatAt = :now where p.id = :id "
+			+ " and ( p.status = :pending or ( p.status = :claimed and p.heartbeatAt < :staleBefore ) ) ")
+	int claim(@Param("id") Long id, @Param("owner") String owner, @Param("pending") Status pending,
+			@Param("claimed") Status claimed, @Param("now") LocalDateTime now,
+			@Param("staleBefore") LocalDateTime staleBefore);
+
+	/**
+	 * Moves the checkpoint and the heartbeat of a partition still claimed by
+	 * {@code owner}. Returns 0 once another instance has taken it over.
+	 */
+	@Transactional
+	@Modifying
+	@Query(" update JobPartition p set p.checkpointId = :checkpointId, p.heartbeatAt = :now "
+			+ " where p.id = :id and p.owner = :owner and p.status = :claimed ")
+	int checkpoint(@Param("id") Long id, @Param("owner") String owner, @Param("claimed") Status claimed,
+			@Param("checkpointId") long checkpointId, @Param("now") LocalDateTime now);
+
+	@Transactional
+	@Modifying
+	@Query(" update JobPartition p set p.status = :done, p.heartbeatAt = :now "
+			+ " where p.id = :id and p.owner = :owner and p.status = :claimed ")
+	int complete(@Param("id") Long id, @Param("owner") String owner, @Param("claimed") Status claimed,
+			@Param("done") Status done, @Param("now") LocalDateTime now);
+
+}
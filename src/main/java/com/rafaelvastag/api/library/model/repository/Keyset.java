@@ -0,0 +1,180 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+
+import com.rafaelvastag.api.library.exception.BusinessException;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Position of a keyset (seek) listing: the sort property and direction plus
+ * the sort value and id of the last row already returned. Listings are
+ * ordered by (property, id) so the next page is a range predicate instead of
+ * an offset, and page N costs the same as page 1. Rows without a sort value
+ * come before the others in ascending order and after them in descending
+ * order.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Keyset {
+
+	public static final String ID = "id";
+
+	private static final String SEPARATOR = "\n";
+
+	private static final String NULL_VALUE = "N";
+
+	private static final String VALUE_PREFIX = "V";
+
+	private final String property;
+
+	private final Direction direction;
+
+	private final Long lastId;
+
+	private final String lastValue;
+
+	/**
+	 * Resolves the position for a request. An empty {@code after} token starts
+	 * from the first row using the first order of {@code sort}; otherwise the
+	 * token carries the ordering it was created with.
+	 */
+	public static Keyset of(String after, Sort sort, Set<String> sortable) {
+		if (after == null || after.trim().isEmpty()) {
+			Sort.Order order = sort.stream().findFirst().orElse(Sort.Order.asc(ID));
+
+			if (!sortable.contains(order.getProperty())) {
+				throw new BusinessException("Cursor listings can't be sorted by " + order.getProperty());
+			}
+
+			return new Keyset(order.getProperty(), order.getDirection(), null, null);
+		}
+
+		return decode(after, sortable);
+	}
+
+	public boolean isFirstPage() {
+		return lastId == null;
+	}
+
+	public boolean isSortedById() {
+		return ID.equals(property);
+	}
+
+	public Keyset next(Object value, Long id) {
+		return new Keyset(property, direction, id, value == null ? null : value.toString());
+	}
+
+	public String encode() {
+		String raw = String.join(SEPARATOR, property, direction.name(), String.valueOf(lastId),
+				lastValue == null ? NULL_VALUE : VALUE_PREFIX + lastValue);
+
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Rows strictly after this position, or null on the first page.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Predicate toPredicate(CriteriaBuilder cb, Path<?> sortPath, Path<Long> idPath) {
+		if (isFirstPage()) {
+			return null;
+		}
+
+		Predicate afterId = direction.isAscending() ? cb.greaterThan(idPath, lastId) : cb.lessThan(idPath, lastId);
+
+		if (isSortedById()) {
+			return afterId;
+		}
+
+		if (lastValue == null) {
+			Predicate afterNull = cb.and(cb.isNull(sortPath), afterId);
+			return direction.isAscending() ? cb.or(afterNull, cb.isNotNull(sortPath)) : afterNull;
+		}
+
+		Expression<Comparable> sortExpression = (Expression<Comparable>) sortPath;
+		Comparable value = convert(lastValue, sortPath.getJavaType());
+		Predicate afterValue = direction.isAscending() ? cb.greaterThan(sortExpression, value)
+				: cb.lessThan(sortExpression, value);
+		Predicate afterLastValue = cb.or(afterValue, cb.and(cb.equal(sortPath, value), afterId));
+
+		return direction.isAscending() ? afterLastValue : cb.or(afterLastValue, cb.isNull(sortPath));
+	}
+
+	public List<Order> toOrders(CriteriaBuilder cb, Path<?> sortPath, Path<Long> idPath) {
+		if (isSortedById()) {
+			return Arrays.asList(order(cb, idPath));
+		}
+
+		Expression<Integer> hasValue = cb.<Integer>selectCase().when(cb.isNull(sortPath), 0).otherwise(1);
+
+		return Arrays.asList(order(cb, hasValue), order(cb, sortPath), order(cb, idPath));
+	}
+
+	private Order order(CriteriaBuilder cb, Expression<?> path) {
+		return direction.isAscending() ? cb.asc(path) : cb.desc(path);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static Comparable convert(String value, Class<?> type) {
+		try {
+			if (Long.class.equals(type)) {
+				return Long.valueOf(value);
+			}
+			if (LocalDate.class.equals(type)) {
+				return LocalDate.parse(value);
+			}
+		} catch (IllegalArgumentException | DateTimeParseException ex) {
+			throw new BusinessException("Invalid cursor");
+		}
+		if (Boolean.class.equals(type)) {
+			return Boolean.valueOf(value);
+		}
+		return value;
+	}
+
+	private static Keyset decode(String token, Set<String> sortable) {
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			String[] parts = raw.split(SEPARATOR, 4);
+
+			if (parts.length != 4 || !sortable.contains(parts[0])) {
+				throw new BusinessException("Invalid cursor");
+			}
+
+			return new Keyset(parts[0], Direction.valueOf(parts[1]), Long.valueOf(parts[2]), decodeValue(parts[3]));
+
+		} catch (IllegalArgumentException ex) {
+			throw new BusinessException("Invalid cursor");
+		}
+	}
+
+	private static String decodeValue(String value) {
+		if (NULL_VALUE.equals(value)) {
+			return null;
+		}
+		if (!value.startsWith(VALUE_PREFIX)) {
+			throw new BusinessException("Invalid cursor");
+		}
+
+		return value.substring(VALUE_PREFIX.length());
+	}
+
+}
@@ -1,30 +1,119 @@
 package com.rafaelvastag.api.library.model.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.rafaelvastag.api.library.dto.BookLoansVersionDTO;
+import com.rafaelvastag.api.library.dto.IdRangeDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.dto.OpenLoanDTO;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.entity.Loan;
 
-public interface LoanRepository extends JpaRepository<Loan, Long> {
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanRepositoryCustom {
 
-	@Query(value = " select case when ( count ( l.id ) > 0 ) then true else false end "
-			+ " from Loan l where l.book = :book and ( l.returned is null or l.returned is false ) ")
-	boolean existsByBookAndNotReturned(@Param(value = "book") Book book);
+	String LOAN_DTO_PROJECTION = " select new com.rafaelvastag.api.library.dto.LoanDTO( "
+			+ " l.id, b.isbn, l.customer, l.emailCustomer, b.id, b.title, b.author ) ";
 
-	@Query(value = " select l from Loan as l join l.book as b " + " where b.isbn = :isbn or l.customer = :customer ")
-	Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customerName,
-			Pageable any);
+	@Query(" select count(l.id) from Loan as l join l.book as b where b.isbn = :isbn and l.customer = :customer ")
+	long countByBookIsbnAndCustomer(@Param("isbn") String isbn, @Param("customer") String customerName);
 
 	@Query(" select l from Loan l where l.loanDate <= :threeDaysAgo and ( l.returned is null or l.returned is false )")
 	List<Loan> findByLoanDateLessThanAndNotReturned(@Param("threeDaysAgo") LocalDate threeDaysAgo);
 
-	Page<Loan> findByBook(Book book, Pageable pageable);
+	@Query(" select new com.rafaelvastag.api.library.dto.IdRangeDTO( min(l.id), max(l.id) ) from Loan l "
+			+ " where l.loanDate <= :dueDate and ( l.returned is null or l.returned is false ) ")
+	IdRangeDTO findOverdueIdRange(@Param("dueDate") LocalDate dueDate);
+
+	/**
+	 * The next late loans of an id range after {@code afterId}, walked in id
+	 * order so a partition can resume from its checkpoint.
+	 */
+	@Query(LOAN_DTO_PROJECTION + " from Loan as l join l.book as b where l.id > :afterId and l.id <= :lastId "
+			+ " and l.loanDate <= :dueDate and ( l.returned is null or l.returned is false ) order by l.id ")
+	List<LoanDTO> findOverdueAfter(@Param("afterId") long afterId, @Param("lastId") long lastId,
+			@Param("dueDate") LocalDate dueDate, Pageable pageable);
+
+	@QueryHints({ @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true") })
+	@Query(" select l from Loan l join fetch l.book where l.returned is null or l.returned is false ")
+	Stream<Loan> streamOpenLoans();
+
+	/**
+	 * Forward-only cursor over every loan for exports. Must be consumed inside a
+	 * transaction and closed by the caller.
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+	@Query(LOAN_DTO_PROJECTION + " from Loan as l join l.book as b order by l.id ")
+	Stream<LoanDTO> streamAllForExport();
+
+	@QueryHints({ @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true") })
+	@Query(" select l.openBookId from Loan l where l.openBookId is not null ")
+	Stream<Long> streamLoanedBookIds();
+
+	@Query(value = LOAN_DTO_PROJECTION + " from Loan as l join l.book as b where b = :book ")
+	List<LoanDTO> findByBook(@Param("book") Book book, Pageable pageable);
+
+	/**
+	 * Locks the loans found until the end of the transaction, so the ones seen
+	 * open here are still open when {@link #markReturned} runs.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(" select new com.rafaelvastag.api.library.dto.OpenLoanDTO( l.id, l.openBookId, b.isbn ) "
+			+ " from Loan l join l.book b where l.id in :ids order by l.id ")
+	List<OpenLoanDTO> findReturnCandidatesById(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Locks the open loans found until the end of the transaction, like
+	 * {@link #findReturnCandidatesById}.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(" select new com.rafaelvastag.api.library.dto.OpenLoanDTO( l.id, l.openBookId, b.isbn ) "
+			+ " from Loan l join l.book b where b.isbn in :isbns and l.openBookId is not null order by l.id ")
+	List<OpenLoanDTO> findOpenByIsbns(@Param("isbns") Collection<String> isbns);
+
+	/**
+	 * Marks open loans returned in one statement, bumping their version like an
+	 * entity update would. Loans returned in the meantime are left alone, and
+	 * the count tells whether any were.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(" update Loan l set l.returned = true, l.openBookId = null, l.version = l.version + 1 "
+			+ " where l.id in :ids and l.openBookId is not null ")
+	int markReturned(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Sets the open-loan column of open loans written before it existed. When
+	 * a book has several of them only the newest gets it, since the unique
+	 * constraint allows one.
+	 */
+	@Transactional
+	@Modifying
+	@Query(value = " update loan set open_book_id = id_book where open_book_id is null and id_book is not null "
+			+ " and ( returned is null or returned = false ) and not exists ( select 1 from loan newer "
+			+ " where newer.id_book = loan.id_book and newer.id > loan.id "
+			+ " and ( newer.returned is null or newer.returned = false ) ) ", nativeQuery = true)
+	int backfillOpenBookIds();
+
+	@Query(" select new com.rafaelvastag.api.library.dto.BookLoansVersionDTO( b.version, count(l.id), "
+			+ " coalesce(max(l.id), 0L), coalesce(sum(l.version), 0L) ) "
+			+ " from Book b left join b.loans l where b.id = :bookId group by b.id, b.version ")
+	Optional<BookLoansVersionDTO> findLoansVersionByBookId(@Param("bookId") Long bookId);
 
 }
@@ -0,0 +1,23 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+
+public interface LoanRepositoryCustom {
+
+	/**
+	 * One page of the loans, without a count query: the total comes from the
+	 * maintained loan counters.
+	 */
+	List<LoanDTO> findByBookIsbnOrCustomer(String isbn, String customerName, Pageable pageable);
+
+	CursorPageDTO<LoanDTO> findByBookIsbnOrCustomerAfter(String isbn, String customerName, Keyset keyset, int size);
+
+	CursorPageDTO<LoanDTO> findByBookAfter(Book book, Keyset keyset, int size);
+
+}
@@ -0,0 +1,238 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+
+public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
+
+	private static final int SORT_VALUE_INDEX = 7;
+
+	private static final Filter ALL = (cb, loan, book) -> null;
+
+	private static final int MAX_MERGED_ROWS = 1000;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Only the given filters become predicates. With both an ISBN and a
+	 * customer in id order, each filter runs as its own indexed lookup of the
+	 * first offset + size loans and the two sorted lists are merged, instead of
+	 * one OR that no single index can serve. Pages reaching past the first
+	 * {@value #MAX_MERGED_ROWS} loans use the OR query instead, so a deep page
+	 * never pulls offset + size rows of each branch into memory.
+	 */
+	@Override
+	public List<LoanDTO> findByBookIsbnOrCustomer(String isbn, String customerName, Pageable pageable) {
+		long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+		int size = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+		Sort sort = pageable.getSort();
+
+		List<Tuple> rows;
+		if (isbn != null && customerName != null && isSortedById(sort) && offset + size <= MAX_MERGED_ROWS) {
+			Direction direction = sort.isSorted() ? sort.iterator().next().getDirection() : Direction.ASC;
+			Sort byId = Sort.by(direction, Keyset.ID);
+			int branchSize = (int) (offset + size);
+
+			rows = mergeById(findRows(byIsbn(isbn), byId, 0, branchSize),
+					findRows(byCustomer(customerName), byId, 0, branchSize), direction, branchSize);
+			rows = rows.subList((int) Math.min(offset, rows.size()), rows.size());
+		} else {
+			rows = findRows(filter(isbn, customerName), sort, offset, size);
+		}
+
+		return rows.stream().map(this::toLoanDTO).collect(Collectors.toList());
+	}
+
+	@Override
+	public CursorPageDTO<LoanDTO> findByBookIsbnOrCustomerAfter(String isbn, String customerName, Keyset keyset,
+			int size) {
+		if (isbn != null && customerName != null && keyset.isSortedById()) {
+			List<Tuple> rows = mergeById(findRows(keyset, size, byIsbn(isbn)),
+					findRows(keyset, size, byCustomer(customerName)), keyset.getDirection(), size + 1);
+
+			return toCursorPage(rows, keyset, size);
+		}
+
+		return toCursorPage(findRows(keyset, size, filter(isbn, customerName)), keyset, size);
+	}
+
+	@Override
+	public CursorPageDTO<LoanDTO> findByBookAfter(Book book, Keyset keyset, int size) {
+		return toCursorPage(findRows(keyset, size, (cb, loan, loanedBook) -> cb.equal(loan.get("book"), book)),
+				keyset, size);
+	}
+
+	private List<Tuple> findRows(Filter filter, Sort sort, long offset, int size) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> query = cb.createTupleQuery();
+		Root<Loan> loan = query.from(Loan.class);
+		Join<Loan, Book> book = loan.join("book");
+
+		List<Order> orders = new ArrayList<>(QueryUtils.toOrders(sort, loan, cb));
+		if (sort.getOrderFor(Keyset.ID) == null) {
+			orders.add(cb.asc(loan.get(Keyset.ID)));
+		}
+
+		query.multiselect(selections(loan, book)).orderBy(orders);
+		Predicate where = filter.toPredicate(cb, loan, book);
+		if (where != null) {
+			query.where(where);
+		}
+
+		return entityManager.createQuery(query).setFirstResult((int) offset).setMaxResults(size).getResultList();
+	}
+
+	/**
+	 * Up to {@code size + 1} rows after the keyset position, the extra one
+	 * telling whether there is a next page.
+	 */
+	private List<Tuple> findRows(Keyset keyset, int size, Filter filter) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> query = cb.createTupleQuery();
+		Root<Loan> loan = query.from(Loan.class);
+		Join<Loan, Book> book = loan.join("book");
+		Path<?> sortPath = loan.get(keyset.getProperty());
+		Path<Long> idPath = loan.get(Keyset.ID);
+
+		List<Predicate> where = new ArrayList<>();
+		Predicate byFilter = filter.toPredicate(cb, loan, book);
+		Predicate afterKeyset = keyset.toPredicate(cb, sortPath, idPath);
+		if (byFilter != null) {
+			where.add(byFilter);
+		}
+		if (afterKeyset != null) {
+			where.add(afterKeyset);
+		}
+
+		List<Selection<?>> selections = selections(loan, book);
+		if (!keyset.isSortedById()) {
+			selections.add(sortPath);
+		}
+
+		query.multiselect(selections)
+				.where(where.toArray(new Predicate[0]))
+				.orderBy(keyset.toOrders(cb, sortPath, idPath));
+
+		return entityManager.createQuery(query).setMaxResults(size + 1).getResultList();
+	}
+
+	private CursorPageDTO<LoanDTO> toCursorPage(List<Tuple> rows, Keyset keyset, int size) {
+		List<LoanDTO> content = new ArrayList<>(Math.min(rows.size(), size));
+		for (int i = 0; i < rows.size() && i < size; i++) {
+			content.add(toLoanDTO(rows.get(i)));
+		}
+
+		if (rows.size() <= size) {
+			return new CursorPageDTO<>(content, size, null);
+		}
+
+		Tuple last = rows.get(size - 1);
+		Long lastId = last.get(0, Long.class);
+		Object lastValue = keyset.isSortedById() ? lastId : last.get(SORT_VALUE_INDEX);
+		String next = keyset.next(lastValue, lastId).encode();
+
+		return new CursorPageDTO<>(content, size, next);
+	}
+
+	/**
+	 * Merges two lists already ordered by loan id, dropping the loans found by
+	 * both, and keeps the first {@code size}.
+	 */
+	private static List<Tuple> mergeById(List<Tuple> first, List<Tuple> second, Direction direction, int size) {
+		Comparator<Long> order = direction.isAscending() ? Comparator.naturalOrder() : Comparator.reverseOrder();
+		List<Tuple> merged = new ArrayList<>(Math.min(size, first.size() + second.size()));
+		int i = 0;
+		int j = 0;
+
+		while (merged.size() < size && (i < first.size() || j < second.size())) {
+			if (j == second.size()) {
+				merged.add(first.get(i++));
+				continue;
+			}
+			if (i == first.size()) {
+				merged.add(second.get(j++));
+				continue;
+			}
+
+			int compared = order.compare(first.get(i).get(0, Long.class), second.get(j).get(0, Long.class));
+			if (compared <= 0) {
+				merged.add(first.get(i++));
+				if (compared == 0) {
+					j++;
+				}
+			} else {
+				merged.add(second.get(j++));
+			}
+		}
+
+		return merged;
+	}
+
+	private static boolean isSortedById(Sort sort) {
+		List<Sort.Order> orders = sort.toList();
+
+		return orders.isEmpty() || orders.size() == 1 && Keyset.ID.equals(orders.get(0).getProperty());
+	}
+
+	private static Filter filter(String isbn, String customerName) {
+		if (isbn == null) {
+			return customerName == null ? ALL : byCustomer(customerName);
+		}
+		if (customerName == null) {
+			return byIsbn(isbn);
+		}
+
+		return (cb, loan, book) -> cb.or(byIsbn(isbn).toPredicate(cb, loan, book),
+				byCustomer(customerName).toPredicate(cb, loan, book));
+	}
+
+	private static Filter byIsbn(String isbn) {
+		return (cb, loan, book) -> cb.equal(book.get("isbn"), isbn);
+	}
+
+	private static Filter byCustomer(String customerName) {
+		return (cb, loan, book) -> cb.equal(loan.get("customer"), customerName);
+	}
+
+	private static List<Selection<?>> selections(Root<Loan> loan, Join<Loan, Book> book) {
+		return new ArrayList<>(Arrays.asList(loan.get(Keyset.ID), book.get("isbn"), loan.get("customer"),
+				loan.get("emailCustomer"), book.get("id"), book.get("title"), book.get("author")));
+	}
+
+	private LoanDTO toLoanDTO(Tuple row) {
+		return new LoanDTO(row.get(0, Long.class), row.get(1, String.class), row.get(2, String.class),
+				row.get(3, String.class), row.get(4, Long.class), row.get(5, String.class), row.get(6, String.class));
+	}
+
+	@FunctionalInterface
+	private interface Filter {
+		Predicate toPredicate(CriteriaBuilder cb, Root<Loan> loan, Join<Loan, Book> book);
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.rafaelvastag.api.library.model.entity.OutboxMail;
+import com.rafaelvastag.api.library.model.entity.OutboxMail.Status;
+
+public interface OutboxMailRepository extends JpaRepository<OutboxMail, Long> {
+
+	@Query(" select m.id from OutboxMail m where m.status = :status and m.nextAttemptAt <= :now order by m.nextAttemptAt ")
+	List<Long> findDueIds(@Param("status") Status status, @Param("now") LocalDateTime now, Pageable pageable);
+
+	/**
+	 * Moves a pending mail to SENDING and counts the attempt, so one that never
+	 * comes back from SENDING still runs out of attempts. Returns 0 when another
+	 * worker or node claimed it first.
+	 */
+	@Transactional
+	@Modifying
+	@Query(" update OutboxMail m set m.status = :claimed, m.claimedAt = :now, m.attempts = m.attempts + 1 "
+			+ " where m.id = :id and m.status = :pending ")
+	int claim(@Param("id") Long id, @Param("pending") Status pending, @Param("claimed") Status claimed,
+			@Param("now") LocalDateTime now);
+
+	@Transactional
+	@Modifying
+	@Query(" update OutboxMail m set m.status = :pending where m.status = :claimed and m.claimedAt < :staleBefore "
+			+ " and m.attempts < :maxAttempts ")
+	int releaseStaleClaims(@Param("pending") Status pending, @Param("claimed") Status claimed,
+			@Param("staleBefore") LocalDateTime staleBefore, @Param("maxAttempts") int maxAttempts);
+
+	@Transactional
+	@Modifying
+	@Query(" update OutboxMail m set m.status = :failed, m.lastError = :error where m.status = :claimed "
+			+ " and m.claimedAt < :staleBefore and m.attempts >= :maxAttempts ")
+	int failStaleClaims(@Param("failed") Status failed, @Param("claimed") Status claimed,
+			@Param("staleBefore") LocalDateTime staleBefore, @Param("maxAttempts") int maxAttempts,
+			@Param("error") String error);
+
+	long countByStatus(Status status);
+
+}
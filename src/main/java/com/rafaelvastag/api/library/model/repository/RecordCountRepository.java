@@ -0,0 +1,66 @@
+package com.rafaelvastag.api.library.model.repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.rafaelvastag.api.library.model.entity.RecordCount;
+
+public interface RecordCountRepository extends JpaRepository<RecordCount, String> {
+
+	@Query(" select c.total from RecordCount c where c.name = :name ")
+	Optional<Long> findTotal(@Param("name") String name);
+
+	/**
+	 * Returns 0 when there is no counter with that name yet.
+	 */
+	@Modifying
+	@Query(" update RecordCount c set c.total = c.total + :delta where c.name = :name ")
+	int increment(@Param("name") String name, @Param("delta") long delta);
+
+	@Modifying
+	@Query(value = " insert into record_count (name, total) values (:name, 0) ", nativeQuery = true)
+	int create(@Param("name") String name);
+
+	@Modifying
+	@Query(" delete from RecordCount c where c.name in :names ")
+	int deleteByNames(@Param("names") Collection<String> names);
+
+	boolean existsByNameStartingWith(String prefix);
+
+	/*
+	 * Backfill of the counters from the counted tables, each used once when
+	 * its counters are still missing.
+	 */
+
+	@Modifying
+	@Query(value = " insert into record_count (name, total) select 'books', count(*) from book ", nativeQuery = true)
+	int backfillBooks();
+
+	@Modifying
+	@Query(value = " insert into record_count (name, total) select 'loans', count(*) from loan ", nativeQuery = true)
+	int backfillLoans();
+
+	@Modifying
+	@Query(value = " insert into record_count (name, total) "
+			+ " select concat('book.loans:', cast(l.id_book as varchar(20))), count(*) from loan l "
+			+ " where l.id_book is not null group by l.id_book ", nativeQuery = true)
+	int backfillBookLoans();
+
+	@Modifying
+	@Query(value = " insert into record_count (name, total) "
+			+ " select concat('isbn.loans:', b.isbn), count(*) from loan l join book b on b.id = l.id_book "
+			+ " where b.isbn is not null group by b.isbn ", nativeQuery = true)
+	int backfillIsbnLoans();
+
+	@Modifying
+	@Query(value = " insert into record_count (name, total) "
+			+ " select concat('customer.loans:', l.customer), count(*) from loan l "
+			+ " where l.customer is not null group by l.customer ", nativeQuery = true)
+	int backfillCustomerLoans();
+
+}
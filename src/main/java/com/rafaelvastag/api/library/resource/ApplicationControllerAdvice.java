@@ -1,5 +1,6 @@
 package com.rafaelvastag.api.library.resource;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -29,6 +30,12 @@ public class ApplicationControllerAdvice {
 		return new ApiErrors(ex);
 	}
 
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	@ResponseStatus(HttpStatus.CONFLICT)
+	public ApiErrors handleOptimisticLockingFailureException(OptimisticLockingFailureException ex) {
+		return new ApiErrors(ex);
+	}
+
 	@SuppressWarnings("unchecked")
 	@ExceptionHandler(ResponseStatusException.class)
 	@ResponseStatus(HttpStatus.BAD_REQUEST)
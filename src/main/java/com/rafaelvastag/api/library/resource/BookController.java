@@ -1,31 +1,46 @@
 package com.rafaelvastag.api.library.resource;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.dto.BookBatchDTO;
 import com.rafaelvastag.api.library.dto.BookDTO;
+import com.rafaelvastag.api.library.dto.BookIdsDTO;
+import com.rafaelvastag.api.library.dto.BookLoansVersionDTO;
+import com.rafaelvastag.api.library.dto.BookPatchDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
 import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.mapper.BookMapper;
 import com.rafaelvastag.api.library.model.entity.Book;
-import com.rafaelvastag.api.library.model.entity.Loan;
 import com.rafaelvastag.api.library.service.BookService;
+import com.rafaelvastag.api.library.service.ExportService;
 import com.rafaelvastag.api.library.service.LoanService;
 
 import io.swagger.annotations.Api;
@@ -44,46 +59,76 @@ public class BookController {
 
 	private final BookService service;
 	private final LoanService loanService;
-	private final ModelMapper modelMapper;
+	private final BookMapper bookMapper;
+	private final ExportService exportService;
 
+	/**
+	 * Answers {@code If-None-Match} from the version column alone, so an
+	 * unchanged book costs one indexed lookup and an empty 304.
+	 */
 	@GetMapping("{id}")
-	@ResponseStatus(HttpStatus.OK)
 	@ApiOperation("Find book by id")
-	public BookDTO getSingleBook(@PathVariable(name = "id") Long id) {
+	public BookDTO getSingleBook(@PathVariable(name = "id") Long id, WebRequest request) {
 		log.info("Getting Book details for id: { } ", id);
-		return service.findById(id).map(book -> modelMapper.map(book, BookDTO.class))
+		Long version = service.findVersionById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		if (request.checkNotModified("\"" + version + "\"")) {
+			return null;
+		}
+
+		return service.findById(id).map(bookMapper::toDto)
 				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 	}
 
 	@GetMapping
 	public Page<BookDTO> find(BookDTO book, Pageable pageRequest) {
-		Book filter = modelMapper.map(book, Book.class);
+		Book filter = bookMapper.toEntity(book);
 
 		Page<Book> result = service.find(filter, pageRequest);
 
-		List<BookDTO> list = result.getContent().stream().map(entity -> modelMapper.map(entity, BookDTO.class))
+		List<BookDTO> list = result.getContent().stream().map(bookMapper::toDto)
 				.collect(Collectors.toList());
 
 		return new PageImpl<>(list, pageRequest, result.getTotalElements());
 	}
 
+	@GetMapping(params = "after")
+	@ApiOperation("Find books page by page from a cursor, without counting the total")
+	public CursorPageDTO<BookDTO> findAfter(BookDTO book, @RequestParam String after, Pageable pageRequest) {
+		Book filter = bookMapper.toEntity(book);
+
+		return service.findAfter(filter, after, pageRequest).map(bookMapper::toDto);
+	}
+
+	@GetMapping("export")
+	@ApiOperation("Stream every book as NDJSON or CSV")
+	public void export(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+			throws IOException {
+		ExportService.Format exportFormat = ExportResponse.start(response, format, "books");
+
+		exportService.exportBooks(exportFormat, response.getWriter());
+	}
+
 	@GetMapping("{id}/loans")
 	@ApiOperation("Obtains a list of loans by book")
-	public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable) {
+	public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable, WebRequest request) {
+		if (notModifiedLoans(id, request)) {
+			return null;
+		}
 		Book book = service.findById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 
-		Page<Loan> loansByBook = loanService.getLoansByBook(book, pageable);
-
-		List<LoanDTO> listLoansDTO = loansByBook.getContent().stream().map(loan -> {
-			Book loanedBook = loan.getBook();
-			BookDTO bookDTO = modelMapper.map(loanedBook, BookDTO.class);
-			LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-			loanDTO.setBook(bookDTO);
+		return loanService.getLoansByBook(book, pageable);
+	}
 
-			return loanDTO;
-		}).collect(Collectors.toList());
+	@GetMapping(value = "{id}/loans", params = "after")
+	@ApiOperation("Obtains the loans of a book page by page from a cursor, without counting the total")
+	public CursorPageDTO<LoanDTO> loansByBookAfter(@PathVariable Long id, @RequestParam String after,
+			Pageable pageable, WebRequest request) {
+		if (notModifiedLoans(id, request)) {
+			return null;
+		}
+		Book book = service.findById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 
-		return new PageImpl<LoanDTO>(listLoansDTO, pageable, loansByBook.getTotalElements());
+		return loanService.getLoansByBookAfter(book, after, pageable);
 	}
 
 	@PostMapping
@@ -91,22 +136,70 @@ public class BookController {
 	@ApiOperation("Create a new book in storage")
 	public BookDTO create(@RequestBody @Valid BookDTO book) {
 		log.info("Creating book for isbn: { } ", book.getIsbn());
-		Book entity = modelMapper.map(book, Book.class);
+		Book entity = bookMapper.toEntity(book);
 		entity = service.save(entity);
 
 		log.info("Book created");
-		return modelMapper.map(entity, BookDTO.class);
+		return bookMapper.toDto(entity);
+	}
+
+	@PostMapping("batch")
+	@ResponseStatus(HttpStatus.CREATED)
+	@ApiOperation("Create a batch of new books in storage")
+	public List<BookDTO> createBatch(@RequestBody @Valid BookBatchDTO batch) {
+		log.info("Creating batch of {} books", batch.getBooks().size());
+		List<Book> entities = service.saveAll(bookMapper.toEntities(batch.getBooks()));
+
+		log.info("Books created");
+		return bookMapper.toDtos(entities);
+	}
+
+	@PostMapping("availability")
+	@ApiOperation("Split a list of book ids into available and loaned ones")
+	public BookAvailabilityDTO availability(@RequestBody @Valid BookIdsDTO bookIds) {
+		return loanService.checkAvailability(bookIds.getIds());
 	}
 
+	/**
+	 * Answers a conflict when the book changes between being read here and
+	 * being saved.
+	 */
 	@PutMapping("{id}")
 	@ApiOperation("Update a registered book")
 	public BookDTO update(@PathVariable Long id, @RequestBody @Valid BookDTO bookDTO) throws Exception {
-		return service.findById(id).map(book -> {
-			book.setAuthor(bookDTO.getAuthor());
-			book.setTitle(bookDTO.getTitle());
-			book = service.update(book);
-			return modelMapper.map(book, BookDTO.class);
-		}).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		try {
+			return service.findById(id).map(book -> {
+				book.setAuthor(bookDTO.getAuthor());
+				book.setTitle(bookDTO.getTitle());
+				book = service.update(book);
+				return bookMapper.toDto(book);
+			}).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		} catch (OptimisticLockingFailureException ex) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "Book changed concurrently");
+		}
+	}
+
+	/**
+	 * Changes only the given fields of the book, provided it is still at the
+	 * version of the {@code If-Match} ETag, and answers the new ETag.
+	 */
+	@PatchMapping("{id}")
+	@ApiOperation("Update the given fields of a registered book at the If-Match version")
+	public ResponseEntity<BookDTO> patch(@PathVariable Long id,
+			@RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestBody @Valid BookPatchDTO patch) {
+		if (ifMatch == null) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_REQUIRED, "If-Match required");
+		}
+
+		try {
+			Book book = service.patch(id, parseVersion(ifMatch), bookMapper.toEntity(patch))
+					.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+
+			return ResponseEntity.ok().eTag("\"" + book.getVersion() + "\"").body(bookMapper.toDto(book));
+		} catch (OptimisticLockingFailureException ex) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+		}
 	}
 
 	@DeleteMapping("{id}")
@@ -120,4 +213,24 @@ public class BookController {
 		service.delete(book);
 	}
 
+	private static Long parseVersion(String eTag) {
+		String version = eTag.trim();
+		if (version.length() > 2 && version.startsWith("\"") && version.endsWith("\"")) {
+			version = version.substring(1, version.length() - 1);
+		}
+
+		try {
+			return Long.valueOf(version);
+		} catch (NumberFormatException ex) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+		}
+	}
+
+	private boolean notModifiedLoans(Long bookId, WebRequest request) {
+		BookLoansVersionDTO version = loanService.getLoansVersionByBook(bookId)
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+
+		return request.checkNotModified(version.toETag());
+	}
+
 }
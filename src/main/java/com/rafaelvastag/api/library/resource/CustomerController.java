@@ -0,0 +1,31 @@
+package com.rafaelvastag.api.library.resource;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.service.LoanService;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/api/customers")
+@RequiredArgsConstructor
+@Api("Customer API")
+public class CustomerController {
+
+	private final LoanService loanService;
+
+	@GetMapping("{name}/loans")
+	@ApiOperation("Obtains the loan history of a customer")
+	public Page<LoanDTO> loans(@PathVariable String name, Pageable pageable) {
+		return loanService.getLoansByCustomer(name, pageable);
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.rafaelvastag.api.library.resource;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.rafaelvastag.api.library.service.ExportService;
+
+/**
+ * Response setup shared by the export endpoints, which write their body
+ * straight to the servlet response instead of returning it.
+ */
+final class ExportResponse {
+
+	private ExportResponse() {
+	}
+
+	static ExportService.Format start(HttpServletResponse response, String format, String name) {
+		ExportService.Format exportFormat;
+		try {
+			exportFormat = ExportService.Format.of(format);
+		} catch (IllegalArgumentException ex) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export format " + format);
+		}
+
+		response.setContentType(exportFormat.getContentType());
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+				"attachment; filename=\"" + name + "." + exportFormat.getExtension() + "\"");
+
+		return exportFormat;
+	}
+
+}
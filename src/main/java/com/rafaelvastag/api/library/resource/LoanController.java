@@ -1,13 +1,12 @@
 package com.rafaelvastag.api.library.resource;
 
-import java.time.LocalDate;
-import java.util.List;
+import java.io.IOException;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,17 +15,22 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
-import com.rafaelvastag.api.library.dto.BookDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
 import com.rafaelvastag.api.library.dto.LoanDTO;
 import com.rafaelvastag.api.library.dto.LoanFilterDTO;
+import com.rafaelvastag.api.library.dto.LoanReturnsDTO;
+import com.rafaelvastag.api.library.dto.LoanReturnsResultDTO;
 import com.rafaelvastag.api.library.dto.ReturnedLoanDTO;
+import com.rafaelvastag.api.library.mapper.LoanMapper;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.entity.Loan;
 import com.rafaelvastag.api.library.service.BookService;
+import com.rafaelvastag.api.library.service.ExportService;
 import com.rafaelvastag.api.library.service.LoanService;
 
 import lombok.RequiredArgsConstructor;
@@ -38,26 +42,30 @@ public class LoanController {
 
 	private final LoanService service;
 	private final BookService bookService;
-	private final ModelMapper modelMapper;
+	private final LoanMapper loanMapper;
+	private final ExportService exportService;
 
 	@GetMapping
 	public Page<LoanDTO> find(LoanFilterDTO loan, Pageable pageRequest) {
-		Page<Loan> result = service.find(loan, pageRequest);
-
-		List<LoanDTO> loans = result.getContent()
-				.stream()
-				.map(entity -> {
+		return service.find(loan, pageRequest);
+	}
 
-					Book book = entity.getBook();
-					BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
-					LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
-					loanDTO.setBook(bookDTO);
+	@GetMapping(params = "after")
+	public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO loan, @RequestParam String after, Pageable pageRequest) {
+		return service.findAfter(loan, after, pageRequest);
+	}
 
-				return loanDTO;
+	@GetMapping("export")
+	public void export(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+			throws IOException {
+		ExportService.Format exportFormat = ExportResponse.start(response, format, "loans");
 
-		}).collect(Collectors.toList());
+		exportService.exportLoans(exportFormat, response.getWriter());
+	}
 
-		return new PageImpl<LoanDTO>(loans, pageRequest, result.getTotalElements());
+	@GetMapping("overdue")
+	public Page<LoanDTO> findOverdue(Pageable pageRequest) {
+		return service.findOverdue(pageRequest);
 	}
 
 	@PostMapping
@@ -65,13 +73,18 @@ public class LoanController {
 	public Long create(@RequestBody LoanDTO loan) {
 		Book book = bookService.findBookByIsbn(loan.getIsbn())
 				.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Book not found for this ISBN"));
-		Loan entity = Loan.builder().customer(loan.getCustomerName()).book(book).emailCustomer(loan.getCustomerName()).loanDate(LocalDate.now()).build();
+		Loan entity = loanMapper.toEntity(loan, book);
 
 		entity = service.save(entity);
 
 		return entity.getId();
 	}
 
+	@PatchMapping("returns")
+	public LoanReturnsResultDTO returnLoans(@RequestBody @Valid LoanReturnsDTO returns) {
+		return service.returnLoans(returns.getLoanIds(), returns.getIsbns());
+	}
+
 	@PatchMapping("{id}")
 	@ResponseStatus(HttpStatus.OK)
 	public void returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO returnedBook) {
@@ -81,7 +94,7 @@ public class LoanController {
 		if (loan.isPresent()) {
 
 			loanFound = loan.get();
-			loanFound.setReturned(returnedBook.getReturned());
+			loanMapper.applyReturn(returnedBook, loanFound);
 			service.updateLoan(loanFound);
 
 		} else {
@@ -0,0 +1,16 @@
+package com.rafaelvastag.api.library.service;
+
+import java.util.Collection;
+
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.model.entity.Loan;
+
+public interface BookAvailabilityIndex {
+
+	void update(Loan loan);
+
+	void markAvailable(Collection<Long> bookIds);
+
+	BookAvailabilityDTO check(Collection<Long> bookIds);
+
+}
@@ -0,0 +1,26 @@
+package com.rafaelvastag.api.library.service;
+
+import java.util.Collection;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.rafaelvastag.api.library.model.entity.Book;
+
+public interface BookSearchIndex {
+
+	void rebuild();
+
+	void markReady();
+
+	void index(Book book);
+
+	void indexAll(Collection<Book> books);
+
+	void remove(Book book);
+
+	boolean supports(Book filter, Pageable pageRequest);
+
+	Page<Long> search(Book filter, Pageable pageRequest);
+
+}
@@ -1,24 +1,34 @@
 package com.rafaelvastag.api.library.service;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
 import com.rafaelvastag.api.library.model.entity.Book;
 
 public interface BookService {
 
 	Book save(Book book);
 
+	List<Book> saveAll(List<Book> books);
+
 	Optional<Book> findById(Long id);
 
+	Optional<Long> findVersionById(Long id);
+
 	void delete(Book book);
 	
 	Book update(Book book);
 
+	Optional<Book> patch(Long id, Long version, Book changes);
+
 	Page<Book> find(Book filter, Pageable pageRequest);
 
+	CursorPageDTO<Book> findAfter(Book filter, String after, Pageable pageRequest);
+
 	Optional<Book> findBookByIsbn(String isbn);
 
 }
@@ -0,0 +1,11 @@
+package com.rafaelvastag.api.library.service;
+
+public interface CatalogSnapshotService {
+
+	void write();
+
+	boolean load();
+
+	void verify();
+
+}
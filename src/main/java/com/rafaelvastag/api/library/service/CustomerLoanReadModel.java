@@ -0,0 +1,24 @@
+package com.rafaelvastag.api.library.service;
+
+import java.util.Collection;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+
+public interface CustomerLoanReadModel {
+
+	void add(Loan loan);
+
+	void updateReturned(Loan loan);
+
+	void markReturned(Collection<Long> loanIds);
+
+	void updateBook(Book book);
+
+	Page<LoanDTO> findByCustomer(String customer, Pageable pageRequest);
+
+}
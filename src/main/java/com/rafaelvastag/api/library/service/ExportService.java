@@ -0,0 +1,31 @@
+package com.rafaelvastag.api.library.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+public interface ExportService {
+
+	void exportLoans(Format format, Writer writer) throws IOException;
+
+	void exportBooks(Format format, Writer writer) throws IOException;
+
+	@Getter
+	@AllArgsConstructor
+	enum Format {
+
+		NDJSON("application/x-ndjson", "ndjson"), CSV("text/csv", "csv");
+
+		private final String contentType;
+
+		private final String extension;
+
+		public static Format of(String value) {
+			return valueOf(value.trim().toUpperCase(Locale.ROOT));
+		}
+	}
+
+}
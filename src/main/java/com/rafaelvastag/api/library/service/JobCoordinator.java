@@ -0,0 +1,19 @@
+package com.rafaelvastag.api.library.service;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import com.rafaelvastag.api.library.dto.IdRangeDTO;
+import com.rafaelvastag.api.library.model.entity.JobPartition;
+
+public interface JobCoordinator {
+
+	boolean plan(String jobName, String runKey, Supplier<IdRangeDTO> idRange, long partitionSize);
+
+	Optional<JobPartition> claim(String jobName);
+
+	boolean checkpoint(JobPartition partition, long processedId, Runnable chunk);
+
+	void complete(JobPartition partition);
+
+}
@@ -1,12 +1,20 @@
 package com.rafaelvastag.api.library.service;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.dto.BookLoansVersionDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.dto.IdRangeDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
 import com.rafaelvastag.api.library.dto.LoanFilterDTO;
+import com.rafaelvastag.api.library.dto.LoanReturnsResultDTO;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.entity.Loan;
 
@@ -18,9 +26,25 @@ public interface LoanService {
 
 	Loan updateLoan(Loan loan);
 
-	Page<Loan> find(LoanFilterDTO loan, Pageable pageRequest);
+	LoanReturnsResultDTO returnLoans(Collection<Long> loanIds, Collection<String> isbns);
 
-	Page<Loan> getLoansByBook(Book book, Pageable pageable);
+	Page<LoanDTO> find(LoanFilterDTO loan, Pageable pageRequest);
 
-	List<Loan> getAllLateLoans();
+	Page<LoanDTO> getLoansByBook(Book book, Pageable pageable);
+
+	Page<LoanDTO> getLoansByCustomer(String customer, Pageable pageable);
+
+	Optional<BookLoansVersionDTO> getLoansVersionByBook(Long bookId);
+
+	CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO loan, String after, Pageable pageRequest);
+
+	CursorPageDTO<LoanDTO> getLoansByBookAfter(Book book, String after, Pageable pageable);
+
+	Page<LoanDTO> findOverdue(Pageable pageRequest);
+
+	BookAvailabilityDTO checkAvailability(List<Long> bookIds);
+
+	IdRangeDTO findOverdueIdRange(LocalDate dueDate);
+
+	List<LoanDTO> findOverdueAfter(long afterId, long lastId, LocalDate dueDate, int size);
 }
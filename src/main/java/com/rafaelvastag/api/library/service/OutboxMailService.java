@@ -0,0 +1,7 @@
+package com.rafaelvastag.api.library.service;
+
+public interface OutboxMailService {
+
+	int dispatchPendingMails();
+
+}
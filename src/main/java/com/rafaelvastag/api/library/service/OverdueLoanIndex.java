@@ -0,0 +1,22 @@
+package com.rafaelvastag.api.library.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.Loan;
+
+public interface OverdueLoanIndex {
+
+	void update(Loan loan);
+
+	void remove(Long loanId);
+
+	List<LoanDTO> findOverdue(LocalDate today);
+
+	Page<LoanDTO> findOverdue(LocalDate today, Pageable pageRequest);
+
+}
@@ -0,0 +1,13 @@
+package com.rafaelvastag.api.library.service;
+
+import java.util.Collection;
+
+public interface RecordCountService {
+
+	long get(String name);
+
+	void add(String name, long delta);
+
+	void remove(Collection<String> names);
+
+}
@@ -0,0 +1,13 @@
+package com.rafaelvastag.api.library.service;
+
+import java.util.Collection;
+
+public interface ReplicaReadGuard {
+
+	void recordWrites(Collection<String> keys);
+
+	void readFromReplica(String... keys);
+
+	boolean isReplicaRead();
+
+}
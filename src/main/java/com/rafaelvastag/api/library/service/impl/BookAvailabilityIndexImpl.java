@@ -0,0 +1,159 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.BookAvailabilityIndex;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compressed bitmap of the ids of the books that have an open loan, behind the
+ * bulk availability check. Built from the open-loan column at startup and kept
+ * up to date by {@link LoanServiceImpl} once each loan write commits; loans
+ * opened or returned on another instance are picked up by a periodic rebuild,
+ * up to {@code application.loans.availability-index.refresh-interval-ms} later.
+ * Checkouts never consult it and leave the decision to the open-loan unique
+ * constraint.
+ */
+@Service
+@Slf4j
+public class BookAvailabilityIndexImpl implements BookAvailabilityIndex {
+
+	private final LoanRepository repository;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Roaring64NavigableMap loanedBooks = new Roaring64NavigableMap();
+
+	public BookAvailabilityIndexImpl(LoanRepository repository) {
+		this.repository = repository;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional(readOnly = true)
+	public void rebuild() {
+		log.info("Book availability index built with {} loaned books", reload());
+	}
+
+	/**
+	 * Replaces the bitmap with the books loaned in the database, so the loans
+	 * opened or returned on other instances are picked up.
+	 */
+	@Scheduled(initialDelayString = "${application.loans.availability-index.refresh-interval-ms}",
+			fixedDelayString = "${application.loans.availability-index.refresh-interval-ms}")
+	@Transactional(readOnly = true)
+	public void refresh() {
+		log.debug("Book availability index refreshed with {} loaned books", reload());
+	}
+
+	/**
+	 * A loan write committed while the ids are read may be undone by the swap
+	 * until the next refresh.
+	 */
+	private long reload() {
+		Roaring64NavigableMap loaned = new Roaring64NavigableMap();
+
+		try (Stream<Long> bookIds = repository.streamLoanedBookIds()) {
+			bookIds.forEach(loaned::addLong);
+		}
+		loaned.runOptimize();
+
+		lock.writeLock().lock();
+		try {
+			loanedBooks.clear();
+			loanedBooks.or(loaned);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return loaned.getLongCardinality();
+	}
+
+	/**
+	 * Marks the loan's book as loaned while the loan is open and as available
+	 * once it is returned, when the current transaction commits.
+	 */
+	@Override
+	public void update(Loan loan) {
+		if (loan.getBook() == null || loan.getBook().getId() == null) {
+			return;
+		}
+		long bookId = loan.getBook().getId();
+		boolean returned = Boolean.TRUE.equals(loan.getReturned());
+
+		afterCommit(() -> {
+			if (returned) {
+				loanedBooks.removeLong(bookId);
+			} else {
+				loanedBooks.addLong(bookId);
+			}
+		});
+	}
+
+	@Override
+	public void markAvailable(Collection<Long> bookIds) {
+		afterCommit(() -> bookIds.forEach(loanedBooks::removeLong));
+	}
+
+	@Override
+	public BookAvailabilityDTO check(Collection<Long> bookIds) {
+		List<Long> available = new ArrayList<>();
+		List<Long> loaned = new ArrayList<>();
+
+		lock.readLock().lock();
+		try {
+			for (Long bookId : bookIds) {
+				(loanedBooks.contains(bookId) ? loaned : available).add(bookId);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return new BookAvailabilityDTO(available, loaned);
+	}
+
+	/**
+	 * Applies a change once the current transaction commits, so a rolled back
+	 * loan write never reaches the bitmap, or straight away outside of one.
+	 */
+	private void afterCommit(Runnable change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			apply(change);
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				apply(change);
+			}
+		});
+	}
+
+	private void apply(Runnable change) {
+		lock.writeLock().lock();
+		try {
+			change.run();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+}
@@ -0,0 +1,447 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.dto.BookVersionDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.model.repository.Keyset;
+import com.rafaelvastag.api.library.service.BookSearchIndex;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory trigram index over the lower-cased title, author and ISBN of every
+ * book. A term matches a field when all of its trigrams are posted for it and
+ * the field really contains the term, which gives the same results as the
+ * CONTAINING/ignore-case example query without scanning the table. Matches
+ * are ranked by where the term appears (whole field, prefix, word start,
+ * anywhere) weighted by field.
+ *
+ * The index lives in this process only: it is filled at startup, from the
+ * catalog snapshot when {@link CatalogSnapshotServiceImpl} has one or else from
+ * the database. Writes made through {@link BookServiceImpl} are applied once
+ * their transaction commits; books written by other instances are picked up by
+ * a periodic comparison of the indexed versions with the database, so they
+ * show up in searches up to
+ * {@code application.books.search-index.refresh-interval-ms} later.
+ */
+@Service
+@Slf4j
+public class BookSearchIndexImpl implements BookSearchIndex {
+
+	private static final int GRAM = 3;
+
+	private static final int REBUILD_PAGE_SIZE = 1000;
+
+	private static final int TITLE = 0;
+	private static final int AUTHOR = 1;
+	private static final int ISBN = 2;
+	private static final int[] FIELD_WEIGHTS = { 3, 2, 1 };
+
+	private final BookRepository repository;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final List<Map<Long, RoaringBitmap>> postings = new ArrayList<>();
+
+	private final List<Entry> docs = new ArrayList<>();
+
+	private final Map<Long, Integer> docByBookId = new HashMap<>();
+
+	private final RoaringBitmap live = new RoaringBitmap();
+
+	private volatile boolean ready;
+
+	public BookSearchIndexImpl(BookRepository repository) {
+		this.repository = repository;
+		for (int i = 0; i < FIELD_WEIGHTS.length; i++) {
+			postings.add(new HashMap<>());
+		}
+	}
+
+	/**
+	 * Runs after the catalog snapshot had its chance to fill the index.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(Ordered.LOWEST_PRECEDENCE)
+	public void rebuildUnlessReady() {
+		if (!ready) {
+			rebuild();
+		}
+	}
+
+	@Override
+	public void rebuild() {
+		long start = System.nanoTime();
+		Example<Book> all = Example.of(new Book());
+		Keyset keyset = Keyset.of("", Sort.by(Keyset.ID), Collections.singleton(Keyset.ID));
+		int indexed = 0;
+
+		CursorPageDTO<Book> page;
+		do {
+			page = repository.findAfter(all, keyset, REBUILD_PAGE_SIZE);
+			indexAll(page.getContent());
+			indexed += page.getContent().size();
+
+			if (page.getNext() != null) {
+				keyset = Keyset.of(page.getNext(), Sort.unsorted(), Collections.singleton(Keyset.ID));
+			}
+		} while (page.getNext() != null);
+
+		ready = true;
+		log.info("Book search index built with {} books from the database in {} ms", indexed,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	@Override
+	public void markReady() {
+		ready = true;
+	}
+
+	/**
+	 * Brings in the books added, changed or deleted by other instances: pages
+	 * through the id and version of every book, reloads the ones missing from
+	 * the index or indexed at another version and drops the indexed ones that
+	 * no longer exist.
+	 */
+	@Scheduled(initialDelayString = "${application.books.search-index.refresh-interval-ms}",
+			fixedDelayString = "${application.books.search-index.refresh-interval-ms}")
+	public void refresh() {
+		if (!ready) {
+			return;
+		}
+		Map<Long, Long> indexed = indexedVersions();
+		List<Long> changed = new ArrayList<>();
+		long afterId = Long.MIN_VALUE;
+
+		List<BookVersionDTO> page;
+		do {
+			page = repository.findVersionsAfter(afterId, PageRequest.of(0, REBUILD_PAGE_SIZE));
+			for (BookVersionDTO book : page) {
+				boolean known = indexed.containsKey(book.getId());
+				Long version = indexed.remove(book.getId());
+				if (!known || !Objects.equals(version, book.getVersion())) {
+					changed.add(book.getId());
+				}
+				afterId = book.getId();
+			}
+		} while (page.size() == REBUILD_PAGE_SIZE);
+
+		for (int from = 0; from < changed.size(); from += REBUILD_PAGE_SIZE) {
+			List<Book> books = repository.findAllById(changed.subList(from, Math.min(from + REBUILD_PAGE_SIZE,
+					changed.size())));
+			apply(() -> books.forEach(this::put));
+		}
+		apply(() -> indexed.keySet().forEach(this::delete));
+
+		if (!changed.isEmpty() || !indexed.isEmpty()) {
+			log.info("Book search index refreshed from the database: {} books reloaded, {} removed",
+					changed.size(), indexed.size());
+		}
+	}
+
+	@Override
+	public void index(Book book) {
+		afterCommit(() -> put(book));
+	}
+
+	@Override
+	public void indexAll(Collection<Book> books) {
+		afterCommit(() -> books.forEach(this::put));
+	}
+
+	@Override
+	public void remove(Book book) {
+		afterCommit(() -> delete(book.getId()));
+	}
+
+	/**
+	 * The index answers unsorted queries whose non-null filter fields all have
+	 * at least one trigram; anything else still goes to the database.
+	 */
+	@Override
+	public boolean supports(Book filter, Pageable pageRequest) {
+		if (!ready || filter.getId() != null || pageRequest.getSort().isSorted()) {
+			return false;
+		}
+
+		boolean hasTerm = false;
+		for (String term : terms(filter)) {
+			if (term != null) {
+				if (term.length() < GRAM) {
+					return false;
+				}
+				hasTerm = true;
+			}
+		}
+
+		return hasTerm;
+	}
+
+	@Override
+	public Page<Long> search(Book filter, Pageable pageRequest) {
+		String[] terms = terms(filter);
+		int limit = (int) pageRequest.getOffset() + pageRequest.getPageSize();
+		PriorityQueue<Hit> best = new PriorityQueue<>(Hit.WORST_FIRST);
+		int total = 0;
+
+		lock.readLock().lock();
+		try {
+			IntIterator candidates = candidates(terms).getIntIterator();
+
+			while (candidates.hasNext()) {
+				Entry entry = docs.get(candidates.next());
+				int score = score(entry, terms);
+
+				if (score > 0) {
+					total++;
+					best.add(new Hit(score, entry.bookId));
+					if (best.size() > limit) {
+						best.poll();
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		List<Long> ranked = new ArrayList<>(best.size());
+		while (!best.isEmpty()) {
+			ranked.add(best.poll().bookId);
+		}
+		Collections.reverse(ranked);
+		List<Long> content = ranked.subList((int) Math.min(pageRequest.getOffset(), ranked.size()), ranked.size());
+
+		return new PageImpl<>(new ArrayList<>(content), pageRequest, total);
+	}
+
+	/**
+	 * Applies a change once the current transaction commits, so a rolled back
+	 * write never reaches the index, or straight away outside of one.
+	 */
+	private void afterCommit(Runnable change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			apply(change);
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				apply(change);
+			}
+		});
+	}
+
+	private void apply(Runnable change) {
+		lock.writeLock().lock();
+		try {
+			change.run();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private Map<Long, Long> indexedVersions() {
+		lock.readLock().lock();
+		try {
+			Map<Long, Long> versions = new HashMap<>(docByBookId.size() * 2);
+			docByBookId.forEach((bookId, doc) -> versions.put(bookId, docs.get(doc).version));
+			return versions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private RoaringBitmap candidates(String[] terms) {
+		List<RoaringBitmap> bitmaps = new ArrayList<>();
+		bitmaps.add(live);
+
+		for (int field = 0; field < terms.length; field++) {
+			if (terms[field] == null) {
+				continue;
+			}
+			Map<Long, RoaringBitmap> fieldPostings = postings.get(field);
+
+			for (long gram : grams(terms[field])) {
+				RoaringBitmap posting = fieldPostings.get(gram);
+				if (posting == null) {
+					return new RoaringBitmap();
+				}
+				bitmaps.add(posting);
+			}
+		}
+
+		bitmaps.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+		return FastAggregation.and(bitmaps.iterator());
+	}
+
+	private void put(Book book) {
+		Integer existing = docByBookId.get(book.getId());
+		int doc = existing != null ? existing : docs.size();
+		if (existing != null) {
+			unindex(doc);
+		} else {
+			docs.add(null);
+			docByBookId.put(book.getId(), doc);
+		}
+
+		Entry entry = new Entry(book.getId(), book.getVersion(), normalize(book.getTitle()),
+				normalize(book.getAuthor()), normalize(book.getIsbn()));
+		docs.set(doc, entry);
+
+		for (int field = 0; field < entry.fields.length; field++) {
+			for (long gram : grams(entry.fields[field])) {
+				postings.get(field).computeIfAbsent(gram, key -> new RoaringBitmap()).add(doc);
+			}
+		}
+		live.add(doc);
+	}
+
+	private void delete(Long bookId) {
+		Integer doc = docByBookId.remove(bookId);
+		if (doc != null) {
+			unindex(doc);
+			docs.set(doc, null);
+		}
+	}
+
+	private void unindex(int doc) {
+		Entry entry = docs.get(doc);
+
+		for (int field = 0; field < entry.fields.length; field++) {
+			Map<Long, RoaringBitmap> fieldPostings = postings.get(field);
+
+			for (long gram : grams(entry.fields[field])) {
+				RoaringBitmap posting = fieldPostings.get(gram);
+				if (posting != null) {
+					posting.remove(doc);
+					if (posting.isEmpty()) {
+						fieldPostings.remove(gram);
+					}
+				}
+			}
+		}
+		live.remove(doc);
+	}
+
+	private static int score(Entry entry, String[] terms) {
+		int score = 0;
+
+		for (int field = 0; field < terms.length; field++) {
+			if (terms[field] == null) {
+				continue;
+			}
+			int fieldScore = matchScore(entry.fields[field], terms[field]);
+			if (fieldScore == 0) {
+				return 0;
+			}
+			score += FIELD_WEIGHTS[field] * fieldScore;
+		}
+
+		return score;
+	}
+
+	private static int matchScore(String value, String term) {
+		if (value.equals(term)) {
+			return 8;
+		}
+		if (value.startsWith(term)) {
+			return 4;
+		}
+
+		int at = value.indexOf(term);
+		if (at < 0) {
+			return 0;
+		}
+		while (at >= 0) {
+			if (!Character.isLetterOrDigit(value.charAt(at - 1))) {
+				return 2;
+			}
+			at = value.indexOf(term, at + 1);
+		}
+		return 1;
+	}
+
+	private static String[] terms(Book filter) {
+		String[] terms = new String[FIELD_WEIGHTS.length];
+		terms[TITLE] = filter.getTitle() == null ? null : normalize(filter.getTitle());
+		terms[AUTHOR] = filter.getAuthor() == null ? null : normalize(filter.getAuthor());
+		terms[ISBN] = filter.getIsbn() == null ? null : normalize(filter.getIsbn());
+		return terms;
+	}
+
+	private static String normalize(String value) {
+		return value == null ? "" : value.toLowerCase(Locale.ROOT);
+	}
+
+	private static long[] grams(String value) {
+		int count = Math.max(0, value.length() - GRAM + 1);
+		long[] grams = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			grams[i] = ((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2);
+		}
+		return grams;
+	}
+
+	private static class Entry {
+
+		private final long bookId;
+		private final Long version;
+		private final String[] fields;
+
+		Entry(long bookId, Long version, String... fields) {
+			this.bookId = bookId;
+			this.version = version;
+			this.fields = fields;
+		}
+	}
+
+	private static class Hit {
+
+		private static final Comparator<Hit> WORST_FIRST = Comparator.<Hit>comparingInt(hit -> hit.score)
+				.thenComparing(Comparator.<Hit>comparingLong(hit -> hit.bookId).reversed());
+
+		private final int score;
+		private final long bookId;
+
+		Hit(int score, long bookId) {
+			this.score = score;
+			this.bookId = bookId;
+		}
+	}
+
+}
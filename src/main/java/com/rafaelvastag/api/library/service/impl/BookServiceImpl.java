@@ -1,36 +1,140 @@
 package com.rafaelvastag.api.library.service.impl;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.ExampleMatcher.StringMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
 import com.rafaelvastag.api.library.exception.BusinessException;
 import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.RecordCount;
 import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.model.repository.Keyset;
+import com.rafaelvastag.api.library.service.BookSearchIndex;
 import com.rafaelvastag.api.library.service.BookService;
+import com.rafaelvastag.api.library.service.CustomerLoanReadModel;
+import com.rafaelvastag.api.library.service.RecordCountService;
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
 
 @Service
 public class BookServiceImpl implements BookService {
 
+	private static final Set<String> CURSOR_SORTABLE = new HashSet<>(Arrays.asList("id", "title", "author", "isbn"));
+
+	/**
+	 * Any book change keeps the book lists off the replicas for a while.
+	 */
+	private static final List<String> BOOK_WRITES = Collections.singletonList(RecordCount.BOOKS);
+
 	private BookRepository repository;
 
-	public BookServiceImpl(BookRepository repo) {
+	private Cache<String, Optional<Book>> isbnCache;
+
+	private BookSearchIndex searchIndex;
+
+	private RecordCountService recordCounts;
+
+	private CustomerLoanReadModel customerLoans;
+
+	private ReplicaReadGuard replicaReads;
+
+	@Value("${application.counts.approximate-filters}")
+	private boolean approximateFilterCounts;
+
+	public BookServiceImpl(BookRepository repo, Cache<String, Optional<Book>> bookIsbnCache,
+			BookSearchIndex searchIndex, RecordCountService recordCounts, CustomerLoanReadModel customerLoans,
+			ReplicaReadGuard replicaReads) {
 		this.repository = repo;
+		this.isbnCache = bookIsbnCache;
+		this.searchIndex = searchIndex;
+		this.recordCounts = recordCounts;
+		this.customerLoans = customerLoans;
+		this.replicaReads = replicaReads;
 	}
 
+	/**
+	 * The ISBN check answers the common case; the unique constraint on the
+	 * ISBN still rejects a book saved concurrently with the same one.
+	 */
 	@Override
+	@Transactional
 	public Book save(Book book) {
 
-		if (repository.existsByIsbn(book.getIsbn())) {
+		if (existsByIsbn(book.getIsbn())) {
 			throw new BusinessException("ISBN exists.");
 		}
 
-		return repository.save(book);
+		Book savedBook;
+		try {
+			savedBook = repository.saveAndFlush(book);
+		} catch (DataIntegrityViolationException ex) {
+			throw isbnViolation(ex, "ISBN exists.");
+		}
+		recordCounts.add(RecordCount.BOOKS, 1);
+		evict(book);
+		replicaReads.recordWrites(BOOK_WRITES);
+		searchIndex.index(savedBook);
+
+		return savedBook;
+	}
+
+	/**
+	 * Checks the ISBNs of the whole batch with a single query and inserts it in
+	 * JDBC batches; nothing is saved when any ISBN is repeated or already exists.
+	 */
+	@Override
+	@Transactional
+	public List<Book> saveAll(List<Book> books) {
+		Set<String> isbns = new HashSet<>();
+		List<String> repeated = books.stream().map(Book::getIsbn).filter(isbn -> !isbns.add(isbn))
+				.distinct().collect(Collectors.toList());
+
+		if (!repeated.isEmpty()) {
+			throw new BusinessException("ISBN repeated in batch: " + String.join(", ", repeated));
+		}
+
+		List<String> existing = repository.findExistingIsbns(isbns);
+		if (!existing.isEmpty()) {
+			throw new BusinessException("ISBN exists: " + String.join(", ", existing));
+		}
+
+		List<Book> savedBooks;
+		try {
+			savedBooks = repository.insertAll(books);
+		} catch (DataIntegrityViolationException ex) {
+			throw isbnViolation(ex, "ISBN exists.");
+		}
+		recordCounts.add(RecordCount.BOOKS, savedBooks.size());
+		evict(isbns);
+		replicaReads.recordWrites(BOOK_WRITES);
+		searchIndex.indexAll(savedBooks);
+
+		return savedBooks;
 	}
 
 	@Override
@@ -39,39 +143,190 @@ public class BookServiceImpl implements BookService {
 	}
 
 	@Override
+	public Optional<Long> findVersionById(Long id) {
+		return repository.findVersionById(id);
+	}
+
+	@Override
+	@Transactional
 	public void delete(Book book) {
 		if (book == null  || book.getId() == null) {
 			throw new IllegalArgumentException("Book invalid");
 		}
 		this.repository.delete(book);
+		recordCounts.add(RecordCount.BOOKS, -1);
+		recordCounts.remove(book.getIsbn() == null ? Collections.singletonList(RecordCount.bookLoans(book.getId()))
+				: Arrays.asList(RecordCount.bookLoans(book.getId()), RecordCount.isbnLoans(book.getIsbn())));
+		evict(book);
+		replicaReads.recordWrites(BOOK_WRITES);
+		searchIndex.remove(book);
 	}
 
 	@Override
+	@Transactional
 	public Book update(Book book) {
 		if (book == null  || book.getId() == null) {
 			throw new IllegalArgumentException("Book invalid");
 		}
 		
-		return repository.save(book);
+		Book updatedBook = repository.save(book);
+		customerLoans.updateBook(updatedBook);
+		evict(book);
+		replicaReads.recordWrites(BOOK_WRITES);
+		searchIndex.index(updatedBook);
+
+		return updatedBook;
 	}
 
+	/**
+	 * Applies the non-null title and author of {@code changes} with one
+	 * conditional update instead of loading and merging the book, then reads
+	 * the patched book back to refresh the search index, the ISBN cache and the
+	 * customer read model. Empty when the book does not exist; an optimistic
+	 * locking failure when it is no longer at {@code version}.
+	 */
 	@Override
+	@Transactional
+	public Optional<Book> patch(Long id, Long version, Book changes) {
+		if (repository.patch(id, version, changes.getTitle(), changes.getAuthor()) == 0) {
+			if (!repository.findVersionById(id).isPresent()) {
+				return Optional.empty();
+			}
+			throw new ObjectOptimisticLockingFailureException(Book.class, id);
+		}
+
+		Book patchedBook = repository.findById(id)
+				.orElseThrow(() -> new ObjectOptimisticLockingFailureException(Book.class, id));
+		customerLoans.updateBook(patchedBook);
+		evict(patchedBook);
+		replicaReads.recordWrites(BOOK_WRITES);
+		searchIndex.index(patchedBook);
+
+		return Optional.of(patchedBook);
+	}
+
+	/**
+	 * Text filters are answered by the search index, ranked by relevance, and
+	 * only the books of the requested page are loaded; sorted pages and filters
+	 * the index cannot serve fall back to the example query.
+	 */
+	@Override
+	@Transactional(readOnly = true)
 	public Page<Book> find(Book filter, Pageable pageRequest) {
-		
-		Example<Book> criteria = Example.of(filter, 
-													ExampleMatcher
-														.matching()
-														.withIgnoreCase()
-														.withIgnoreNullValues()
-														.withStringMatcher(StringMatcher.CONTAINING)
-														);
-		
-		return repository.findAll(criteria, pageRequest);
+		replicaReads.readFromReplica(RecordCount.BOOKS);
+		if (!searchIndex.supports(filter, pageRequest)) {
+			return findByExample(filter, pageRequest);
+		}
+
+		Page<Long> ids = searchIndex.search(filter, pageRequest);
+		Map<Long, Book> books = repository.findAllById(ids.getContent()).stream()
+				.collect(Collectors.toMap(Book::getId, Function.identity()));
+		List<Book> ranked = ids.getContent().stream().map(books::get).filter(Objects::nonNull)
+				.collect(Collectors.toList());
+
+		return new PageImpl<>(ranked, pageRequest, ids.getTotalElements());
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public CursorPageDTO<Book> findAfter(Book filter, String after, Pageable pageRequest) {
+		replicaReads.readFromReplica(RecordCount.BOOKS);
+		Keyset keyset = Keyset.of(after, pageRequest.getSort(), CURSOR_SORTABLE);
+
+		return repository.findAfter(matching(filter), keyset, pageRequest.getPageSize());
 	}
 
 	@Override
 	public Optional<Book> findBookByIsbn(String isbn) {
-		return repository.findByIsbn(isbn);
+		if (isbn == null) {
+			return Optional.empty();
+		}
+
+		return isbnCache.get(isbn, repository::findByIsbn);
+	}
+
+	/**
+	 * The whole catalog is counted by the maintained book counter. Other filters
+	 * run a count query, unless {@code application.counts.approximate-filters}
+	 * is set: then one extra row is read and the total only tells whether
+	 * there is a next page.
+	 */
+	private Page<Book> findByExample(Book filter, Pageable pageRequest) {
+		if (pageRequest.isUnpaged()) {
+			return repository.findAll(matching(filter), pageRequest);
+		}
+
+		if (filter.getId() == null && filter.getTitle() == null && filter.getAuthor() == null
+				&& filter.getIsbn() == null) {
+			return PageableExecutionUtils.getPage(repository.findAllBy(pageRequest), pageRequest,
+					() -> recordCounts.get(RecordCount.BOOKS));
+		}
+
+		if (!approximateFilterCounts) {
+			return repository.findAll(matching(filter), pageRequest);
+		}
+
+		int size = pageRequest.getPageSize();
+		List<Book> rows = repository.findContent(matching(filter), pageRequest, size + 1);
+		List<Book> content = rows.size() > size ? rows.subList(0, size) : rows;
+
+		return new PageImpl<>(content, pageRequest, pageRequest.getOffset() + rows.size());
+	}
+
+	private Example<Book> matching(Book filter) {
+		return Example.of(filter, 
+							ExampleMatcher
+								.matching()
+								.withIgnoreCase()
+								.withIgnoreNullValues()
+								.withStringMatcher(StringMatcher.CONTAINING)
+								);
+	}
+
+	private boolean existsByIsbn(String isbn) {
+		Optional<Book> cached = isbn == null ? null : isbnCache.getIfPresent(isbn);
+
+		if (cached != null) {
+			return cached.isPresent();
+		}
+
+		return repository.existsByIsbn(isbn);
+	}
+
+	private void evict(Book book) {
+		if (book.getIsbn() != null) {
+			evict(Collections.singleton(book.getIsbn()));
+		}
+	}
+
+	/**
+	 * Drops the ISBNs from the cache now, so this transaction reads its own
+	 * change, and again after commit, so a lookup running alongside it cannot
+	 * keep the uncommitted state, or a missing book, cached until it expires.
+	 */
+	private void evict(Collection<String> isbns) {
+		isbnCache.invalidateAll(isbns);
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					isbnCache.invalidateAll(isbns);
+				}
+			});
+		}
+	}
+
+	private RuntimeException isbnViolation(DataIntegrityViolationException ex, String message) {
+		if (!(ex.getCause() instanceof ConstraintViolationException)) {
+			return ex;
+		}
+
+		String constraintName = ((ConstraintViolationException) ex.getCause()).getConstraintName();
+
+		return constraintName != null && constraintName.toLowerCase().contains(Book.ISBN_CONSTRAINT)
+				? new BusinessException(message)
+				: ex;
 	}
 
 }
@@ -0,0 +1,371 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.rafaelvastag.api.library.dto.CatalogEntryDTO;
+import com.rafaelvastag.api.library.mapper.BookMapper;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.service.BookSearchIndex;
+import com.rafaelvastag.api.library.service.CatalogSnapshotService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps a binary copy of the catalog (id, version, isbn, title, author) on
+ * local disk so a restarted node can fill the search index from a
+ * memory-mapped file instead of reading the whole book table first. The ISBN
+ * cache is not seeded from it: existence checks and checkouts must not answer
+ * from a copy that may be days old.
+ *
+ * The file is a 16 byte header (magic, format, creation time), one record per
+ * book ordered by id (two longs and three length-prefixed UTF-8 strings) and a
+ * trailer with the record count and a CRC32 of everything before it. It is
+ * written to a temporary file and moved into place, periodically and on
+ * shutdown. After a warm start the snapshot is merged against the database in
+ * the background and every book added, changed or deleted since is fixed up.
+ * Off by default; the file path has to be set explicitly and must not be
+ * shared between instances.
+ */
+@Service
+@Slf4j
+public class CatalogSnapshotServiceImpl implements CatalogSnapshotService {
+
+	private static final int MAGIC = 0x4C42534E;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_BYTES = 16;
+
+	private static final int TRAILER_BYTES = 12;
+
+	private static final int LOAD_CHUNK_SIZE = 1000;
+
+	private final BookRepository repository;
+	private final BookSearchIndex searchIndex;
+	private final Cache<String, Optional<Book>> isbnCache;
+	private final BookMapper bookMapper;
+	private final TransactionTemplate readOnlyTransaction;
+
+	@Value("${application.catalog.snapshot.enabled}")
+	private boolean enabled;
+
+	@Value("${application.catalog.snapshot.path}")
+	private String path;
+
+	private ExecutorService verifier;
+
+	public CatalogSnapshotServiceImpl(BookRepository repository, BookSearchIndex searchIndex,
+			Cache<String, Optional<Book>> bookIsbnCache, BookMapper bookMapper,
+			PlatformTransactionManager transactionManager) {
+		this.repository = repository;
+		this.searchIndex = searchIndex;
+		this.isbnCache = bookIsbnCache;
+		this.bookMapper = bookMapper;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+	}
+
+	@PostConstruct
+	public void start() {
+		if (enabled && (path == null || path.trim().isEmpty())) {
+			throw new IllegalStateException(
+					"application.catalog.snapshot.path must be set when the catalog snapshot is enabled");
+		}
+		this.verifier = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("catalog-snapshot-"));
+	}
+
+	@PreDestroy
+	public void stop() {
+		verifier.shutdownNow();
+		if (enabled) {
+			write();
+		}
+	}
+
+	/**
+	 * Runs before the search index falls back to reading the book table.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	public void warmStart() {
+		if (enabled && load()) {
+			searchIndex.markReady();
+			verifier.execute(this::verify);
+		}
+	}
+
+	@Scheduled(initialDelayString = "${application.catalog.snapshot.write-interval-ms}",
+			fixedDelayString = "${application.catalog.snapshot.write-interval-ms}")
+	public void writePeriodically() {
+		if (enabled) {
+			write();
+		}
+	}
+
+	@Override
+	public void write() {
+		Path target = Paths.get(path);
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		long start = System.nanoTime();
+
+		try {
+			Integer written = readOnlyTransaction.execute(status -> {
+				try (Stream<CatalogEntryDTO> catalog = repository.streamCatalog()) {
+					return write(catalog.iterator(), temporary);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			log.info("Catalog snapshot with {} books written to {} in {} ms", written, target, elapsedMillis(start));
+		} catch (IOException | RuntimeException ex) {
+			log.warn("Could not write the catalog snapshot to {}", target, ex);
+		}
+	}
+
+	/**
+	 * Fills the search index from the snapshot. Returns false when there is no
+	 * usable snapshot.
+	 */
+	@Override
+	public boolean load() {
+		Path file = Paths.get(path);
+		if (!Files.isReadable(file)) {
+			log.info("No catalog snapshot at {}, the catalog is read from the database", file);
+			return false;
+		}
+		long start = System.nanoTime();
+
+		try {
+			ByteBuffer records = map(file);
+			byte[] scratch = new byte[Short.MAX_VALUE];
+			List<Book> chunk = new ArrayList<>(LOAD_CHUNK_SIZE);
+			int loaded = 0;
+
+			while (records.hasRemaining()) {
+				Book book = readBook(records, scratch);
+				chunk.add(book);
+				loaded++;
+				if (chunk.size() == LOAD_CHUNK_SIZE) {
+					searchIndex.indexAll(chunk);
+					chunk.clear();
+				}
+			}
+			searchIndex.indexAll(chunk);
+
+			log.info("Catalog snapshot with {} books loaded from {} in {} ms", loaded, file, elapsedMillis(start));
+			return true;
+		} catch (IOException | RuntimeException ex) {
+			log.warn("Ignoring unreadable catalog snapshot {}", file, ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Merges the snapshot and the book table, both ordered by id, and re-indexes
+	 * the books that are new or have another version in the database and drops
+	 * the ones that no longer exist.
+	 */
+	@Override
+	public void verify() {
+		Path file = Paths.get(path);
+		long start = System.nanoTime();
+
+		try {
+			ByteBuffer records = map(file);
+			int[] fixed = readOnlyTransaction.execute(status -> {
+				try (Stream<CatalogEntryDTO> catalog = repository.streamCatalog()) {
+					return merge(records, catalog.iterator());
+				}
+			});
+
+			log.info("Catalog snapshot checked against the database in {} ms: {} books refreshed, {} removed",
+					elapsedMillis(start), fixed[0], fixed[1]);
+		} catch (IOException | RuntimeException ex) {
+			log.warn("Could not check the catalog snapshot against the database, rebuilding the search index", ex);
+			searchIndex.rebuild();
+		}
+	}
+
+	private int[] merge(ByteBuffer records, Iterator<CatalogEntryDTO> catalog) {
+		byte[] scratch = new byte[Short.MAX_VALUE];
+		int refreshed = 0;
+		int removed = 0;
+
+		CatalogEntryDTO entry = catalog.hasNext() ? catalog.next() : null;
+		Book snapshotBook = records.hasRemaining() ? readBook(records, scratch) : null;
+
+		while (entry != null || snapshotBook != null) {
+			if (snapshotBook == null || entry != null && entry.getId() < snapshotBook.getId()) {
+				refresh(entry);
+				refreshed++;
+				entry = catalog.hasNext() ? catalog.next() : null;
+			} else if (entry == null || snapshotBook.getId() < entry.getId()) {
+				drop(snapshotBook);
+				removed++;
+				snapshotBook = records.hasRemaining() ? readBook(records, scratch) : null;
+			} else {
+				if (!entry.getVersion().equals(snapshotBook.getVersion())) {
+					evict(snapshotBook.getIsbn());
+					refresh(entry);
+					refreshed++;
+				}
+				entry = catalog.hasNext() ? catalog.next() : null;
+				snapshotBook = records.hasRemaining() ? readBook(records, scratch) : null;
+			}
+		}
+
+		return new int[] { refreshed, removed };
+	}
+
+	private void refresh(CatalogEntryDTO entry) {
+		searchIndex.index(bookMapper.toEntity(entry));
+		evict(entry.getIsbn());
+	}
+
+	private void drop(Book book) {
+		searchIndex.remove(book);
+		evict(book.getIsbn());
+	}
+
+	private void evict(String isbn) {
+		if (isbn != null) {
+			isbnCache.invalidate(isbn);
+		}
+	}
+
+	private static int write(Iterator<CatalogEntryDTO> catalog, Path file) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file), 1 << 16), new CRC32());
+		int count = 0;
+
+		try (DataOutputStream out = new DataOutputStream(checked)) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(System.currentTimeMillis());
+
+			while (catalog.hasNext()) {
+				CatalogEntryDTO entry = catalog.next();
+				out.writeLong(entry.getId());
+				out.writeLong(entry.getVersion() == null ? -1L : entry.getVersion());
+				writeString(out, entry.getIsbn());
+				writeString(out, entry.getTitle());
+				writeString(out, entry.getAuthor());
+				count++;
+			}
+
+			out.writeInt(count);
+			out.flush();
+			out.writeLong(checked.getChecksum().getValue());
+		}
+
+		return count;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeShort(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IOException("Value too long for the catalog snapshot: " + bytes.length + " bytes");
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Maps the snapshot read-only, checks its header and checksum and returns a
+	 * buffer positioned on the first record and limited to the last one.
+	 */
+	private static ByteBuffer map(Path file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES + TRAILER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException("Unexpected catalog snapshot size " + size);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("Not a catalog snapshot in format " + FORMAT_VERSION);
+		}
+
+		int checksumAt = buffer.limit() - Long.BYTES;
+		ByteBuffer checked = buffer.duplicate();
+		checked.limit(checksumAt);
+		CRC32 crc = new CRC32();
+		crc.update(checked);
+		if (crc.getValue() != buffer.getLong(checksumAt)) {
+			throw new IOException("Catalog snapshot checksum mismatch");
+		}
+
+		buffer.position(HEADER_BYTES);
+		buffer.limit(buffer.limit() - TRAILER_BYTES);
+		return buffer;
+	}
+
+	private static Book readBook(ByteBuffer records, byte[] scratch) {
+		long id = records.getLong();
+		long version = records.getLong();
+
+		return Book.builder().id(id).version(version < 0 ? null : version).isbn(readString(records, scratch))
+				.title(readString(records, scratch)).author(readString(records, scratch)).build();
+	}
+
+	private static String readString(ByteBuffer records, byte[] scratch) {
+		short length = records.getShort();
+		if (length < 0) {
+			return null;
+		}
+
+		records.get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private static long elapsedMillis(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+}
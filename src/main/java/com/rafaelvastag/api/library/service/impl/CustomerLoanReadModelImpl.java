@@ -0,0 +1,106 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.CustomerLoan;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.entity.RecordCount;
+import com.rafaelvastag.api.library.model.repository.CustomerLoanRepository;
+import com.rafaelvastag.api.library.service.CustomerLoanReadModel;
+import com.rafaelvastag.api.library.service.RecordCountService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the {@code customer_loan} rows in step with the loans. Updates run in
+ * the caller's transaction, so a loan and its read model row commit together;
+ * the page totals come from the customer loan counter.
+ */
+@Service
+@Slf4j
+public class CustomerLoanReadModelImpl implements CustomerLoanReadModel {
+
+	private final CustomerLoanRepository repository;
+
+	private final RecordCountService recordCounts;
+
+	private final TransactionTemplate transaction;
+
+	public CustomerLoanReadModelImpl(CustomerLoanRepository repository, RecordCountService recordCounts,
+			PlatformTransactionManager transactionManager) {
+		this.repository = repository;
+		this.recordCounts = recordCounts;
+		this.transaction = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Fills the read model from the loans the first time the application starts
+	 * against a database without it.
+	 */
+	@PostConstruct
+	public void backfill() {
+		transaction.executeWithoutResult(status -> {
+			if (!repository.findFirstBy().isPresent()) {
+				int rows = repository.backfill();
+				if (rows > 0) {
+					log.info("Backfilled {} customer loans", rows);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Copies a new loan with its book, which must be loaded.
+	 */
+	@Override
+	@Transactional
+	public void add(Loan loan) {
+		if (loan.getCustomer() == null || loan.getBook() == null) {
+			return;
+		}
+		Book book = loan.getBook();
+
+		repository.save(CustomerLoan.builder().id(loan.getId()).customer(loan.getCustomer())
+				.emailCustomer(loan.getEmailCustomer()).bookId(book.getId()).isbn(book.getIsbn())
+				.title(book.getTitle()).author(book.getAuthor()).loanDate(loan.getLoanDate())
+				.returned(loan.getReturned()).build());
+	}
+
+	@Override
+	@Transactional
+	public void updateReturned(Loan loan) {
+		repository.updateReturned(loan.getId(), loan.getReturned());
+	}
+
+	@Override
+	@Transactional
+	public void markReturned(Collection<Long> loanIds) {
+		repository.markReturned(loanIds);
+	}
+
+	@Override
+	@Transactional
+	public void updateBook(Book book) {
+		repository.updateBook(book.getId(), book.getTitle(), book.getAuthor());
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanDTO> findByCustomer(String customer, Pageable pageRequest) {
+		return PageableExecutionUtils.getPage(repository.findByCustomer(customer, pageRequest), pageRequest,
+				() -> recordCounts.get(RecordCount.customerLoans(customer)));
+	}
+
+}
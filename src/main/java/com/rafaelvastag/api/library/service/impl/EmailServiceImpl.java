@@ -1,39 +1,49 @@
 package com.rafaelvastag.api.library.service.impl;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.rafaelvastag.api.library.model.entity.OutboxMail;
+import com.rafaelvastag.api.library.model.entity.OutboxMail.Status;
+import com.rafaelvastag.api.library.model.repository.OutboxMailRepository;
 import com.rafaelvastag.api.library.service.EmailService;
 
 import lombok.RequiredArgsConstructor;
 
+/**
+ * Queues one outbox mail per recipient; delivery happens asynchronously in
+ * {@link OutboxMailServiceImpl}.
+ */
 @Service
 @RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService {
 
-	private final JavaMailSender javaMailSender;
-
-	@Value("${application.mail.default.remetent}")
-	private String mailRemetent;
+	private final OutboxMailRepository outboxMailRepository;
 
 	@Value("${application.mail.default.subject-message}")
 	private String mailSubject;
 
+	/**
+	 * Joins the caller's transaction, so the late-loan job commits the mails of
+	 * a chunk together with the partition checkpoint past it.
+	 */
 	@Override
+	@Transactional
 	public void sendMails(String message, List<String> customerEmailsLateLoansList) {
-		String[] listOfEmailsToBeSend = customerEmailsLateLoansList.toArray(new String[customerEmailsLateLoansList.size()]);
-		
-		SimpleMailMessage mailMessage = new SimpleMailMessage();
-		mailMessage.setFrom(mailRemetent);
-		mailMessage.setSubject(mailSubject);
-		mailMessage.setText(message);
-		mailMessage.setTo(listOfEmailsToBeSend);
-
-		javaMailSender.send(mailMessage);
+		LocalDateTime now = LocalDateTime.now();
+
+		List<OutboxMail> mails = customerEmailsLateLoansList.stream()
+				.distinct()
+				.map(recipient -> OutboxMail.builder().recipient(recipient).subject(mailSubject).message(message)
+						.status(Status.PENDING).nextAttemptAt(now).build())
+				.collect(Collectors.toList());
+
+		outboxMailRepository.saveAll(mails);
 	}
 
 }
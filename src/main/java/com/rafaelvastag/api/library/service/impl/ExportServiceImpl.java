@@ -0,0 +1,115 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rafaelvastag.api.library.dto.BookDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.ExportService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Writes whole tables row by row from a forward-only cursor. The queries
+ * project straight into DTOs, so nothing is attached to the persistence
+ * context (or put in the second-level cache) and memory stays flat however
+ * many rows are exported.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExportServiceImpl implements ExportService {
+
+	private static final String[] LOAN_COLUMNS = { "id", "isbn", "customerName", "emailCustomer", "bookId",
+			"bookTitle", "bookAuthor" };
+
+	private static final String[] BOOK_COLUMNS = { "id", "title", "author", "isbn" };
+
+	private final LoanRepository loanRepository;
+	private final BookRepository bookRepository;
+	private final ObjectMapper objectMapper;
+
+	@Override
+	@Transactional(readOnly = true)
+	public void exportLoans(Format format, Writer writer) throws IOException {
+		try (Stream<LoanDTO> loans = loanRepository.streamAllForExport()) {
+			export(loans, LoanDTO.class, LOAN_COLUMNS,
+					loan -> new Object[] { loan.getId(), loan.getIsbn(), loan.getCustomerName(),
+							loan.getEmailCustomer(), loan.getBook().getId(), loan.getBook().getTitle(),
+							loan.getBook().getAuthor() },
+					format, writer);
+		}
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void exportBooks(Format format, Writer writer) throws IOException {
+		try (Stream<BookDTO> books = bookRepository.streamAllForExport()) {
+			export(books, BookDTO.class, BOOK_COLUMNS,
+					book -> new Object[] { book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn() },
+					format, writer);
+		}
+	}
+
+	private <T> void export(Stream<T> rows, Class<T> type, String[] columns, Function<T, Object[]> values,
+			Format format, Writer writer) throws IOException {
+		Iterator<T> iterator = rows.iterator();
+
+		if (format == Format.CSV) {
+			writeCsvLine(columns, writer);
+			while (iterator.hasNext()) {
+				writeCsvLine(values.apply(iterator.next()), writer);
+			}
+		} else {
+			ObjectWriter rowWriter = objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+			JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)
+					.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+			while (iterator.hasNext()) {
+				rowWriter.writeValue(generator, iterator.next());
+				generator.writeRaw('\n');
+			}
+			generator.close();
+		}
+
+		writer.flush();
+	}
+
+	private static void writeCsvLine(Object[] values, Writer writer) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			writeCsvField(values[i], writer);
+		}
+		writer.write("\r\n");
+	}
+
+	private static void writeCsvField(Object value, Writer writer) throws IOException {
+		if (value == null) {
+			return;
+		}
+
+		String text = value.toString();
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+			writer.write(text);
+			return;
+		}
+
+		writer.write('"');
+		writer.write(text.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rafaelvastag.api.library.dto.IdRangeDTO;
+import com.rafaelvastag.api.library.model.entity.JobPartition;
+import com.rafaelvastag.api.library.model.entity.JobPartition.Status;
+import com.rafaelvastag.api.library.model.repository.JobPartitionRepository;
+import com.rafaelvastag.api.library.service.JobCoordinator;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits a job run into id range partitions in the {@code job_partition}
+ * table, so that every instance can claim a share of the run. The first
+ * instance to insert a run's partitions plans it; the others only claim.
+ * A claim is kept alive by its checkpoints, and one whose heartbeat is older
+ * than the timeout is taken over from its last checkpoint.
+ */
+@Service
+@Slf4j
+public class JobCoordinatorImpl implements JobCoordinator {
+
+	private static final int CLAIM_CANDIDATES = 10;
+
+	@Value("${application.jobs.heartbeat-timeout-seconds}")
+	private long heartbeatTimeoutSeconds;
+
+	private final JobPartitionRepository repository;
+
+	private final TransactionTemplate newTransaction;
+
+	private final TransactionTemplate transaction;
+
+	@Getter
+	private final String owner;
+
+	public JobCoordinatorImpl(JobPartitionRepository repository, PlatformTransactionManager transactionManager) {
+		this.repository = repository;
+		this.newTransaction = new TransactionTemplate(transactionManager);
+		this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.transaction = new TransactionTemplate(transactionManager);
+		this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/"
+				+ UUID.randomUUID().toString().substring(0, 8);
+	}
+
+	/**
+	 * Inserts the partitions of a run unless it was planned already. Returns
+	 * false when another instance planned it first.
+	 */
+	@Override
+	public boolean plan(String jobName, String runKey, Supplier<IdRangeDTO> idRange, long partitionSize) {
+		if (repository.existsByJobNameAndRunKey(jobName, runKey)) {
+			return false;
+		}
+
+		IdRangeDTO range = idRange.get();
+		List<JobPartition> partitions = new ArrayList<>();
+		if (range.isEmpty()) {
+			partitions.add(partition(jobName, runKey, 0, 0, -1, Status.DONE));
+		} else {
+			int partitionNo = 0;
+			for (long first = range.getFirst(); first <= range.getLast(); first += partitionSize) {
+				long last = Math.min(range.getLast(), first + partitionSize - 1);
+				partitions.add(partition(jobName, runKey, partitionNo++, first, last, Status.PENDING));
+			}
+		}
+
+		try {
+			newTransaction.executeWithoutResult(status -> repository.saveAll(partitions));
+		} catch (DataIntegrityViolationException ex) {
+			log.debug("Run {} of {} was planned concurrently", runKey, jobName);
+			return false;
+		}
+
+		log.info("Planned run {} of {} in {} partitions", runKey, jobName, partitions.size());
+		return true;
+	}
+
+	/**
+	 * Claims the next pending or abandoned partition of the job, if any.
+	 */
+	@Override
+	public Optional<JobPartition> claim(String jobName) {
+		while (true) {
+			LocalDateTime now = LocalDateTime.now();
+			List<Long> ids = repository.findClaimableIds(jobName, Status.PENDING, Status.CLAIMED, staleBefore(now),
+					PageRequest.of(0, CLAIM_CANDIDATES));
+			if (ids.isEmpty()) {
+				return Optional.empty();
+			}
+
+			for (Long id : ids) {
+				if (repository.claim(id, owner, Status.PENDING, Status.CLAIMED, now, staleBefore(now)) > 0) {
+					return repository.findById(id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs a processed chunk's side effects in one transaction with the move
+	 * of the checkpoint, so a chunk is never applied twice nor skipped. Returns
+	 * false, without running the chunk, once another instance owns the
+	 * partition.
+	 */
+	@Override
+	public boolean checkpoint(JobPartition partition, long processedId, Runnable chunk) {
+		Boolean owned = transaction.execute(status -> {
+			if (repository.checkpoint(partition.getId(), owner, Status.CLAIMED, processedId,
+					LocalDateTime.now()) == 0) {
+				return false;
+			}
+			chunk.run();
+			return true;
+		});
+
+		if (Boolean.TRUE.equals(owned)) {
+			partition.setCheckpointId(processedId);
+			return true;
+		}
+
+		log.warn("Lost partition {} of {} to another instance", partition.getPartitionNo(), partition.getJobName());
+		return false;
+	}
+
+	@Override
+	public void complete(JobPartition partition) {
+		if (repository.complete(partition.getId(), owner, Status.CLAIMED, Status.DONE, LocalDateTime.now()) > 0) {
+			partition.setStatus(Status.DONE);
+		}
+	}
+
+	private LocalDateTime staleBefore(LocalDateTime now) {
+		return now.minusSeconds(heartbeatTimeoutSeconds);
+	}
+
+	private static JobPartition partition(String jobName, String runKey, int partitionNo, long firstId,
+			long lastId, Status status) {
+		return JobPartition.builder().jobName(jobName).runKey(runKey).partitionNo(partitionNo).firstId(firstId)
+				.lastId(lastId).checkpointId(firstId - 1).status(status).build();
+	}
+
+}
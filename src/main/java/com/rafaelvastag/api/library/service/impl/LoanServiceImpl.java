@@ -1,37 +1,123 @@
 package com.rafaelvastag.api.library.service.impl;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.dto.BookLoansVersionDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.dto.IdRangeDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
 import com.rafaelvastag.api.library.dto.LoanFilterDTO;
+import com.rafaelvastag.api.library.dto.LoanReturnsResultDTO;
+import com.rafaelvastag.api.library.dto.OpenLoanDTO;
 import com.rafaelvastag.api.library.exception.BusinessException;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.entity.RecordCount;
+import com.rafaelvastag.api.library.model.repository.Keyset;
 import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.BookAvailabilityIndex;
+import com.rafaelvastag.api.library.service.CustomerLoanReadModel;
 import com.rafaelvastag.api.library.service.LoanService;
+import com.rafaelvastag.api.library.service.OverdueLoanIndex;
+import com.rafaelvastag.api.library.service.RecordCountService;
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
+
+import lombok.extern.slf4j.Slf4j;
 
 @Service
+@Slf4j
 public class LoanServiceImpl implements LoanService {
 
+	private static final Set<String> CURSOR_SORTABLE = new HashSet<>(Arrays.asList("id", "loanDate"));
+
+	static final int RETURN_BATCH_SIZE = 1000;
+
 	private LoanRepository repository;
 
-	public LoanServiceImpl(LoanRepository repository) {
+	private OverdueLoanIndex overdueLoanIndex;
+
+	private BookAvailabilityIndex availabilityIndex;
+
+	private RecordCountService recordCounts;
+
+	private CustomerLoanReadModel customerLoans;
+
+	private ReplicaReadGuard replicaReads;
+
+	public LoanServiceImpl(LoanRepository repository, OverdueLoanIndex overdueLoanIndex,
+			BookAvailabilityIndex availabilityIndex, RecordCountService recordCounts,
+			CustomerLoanReadModel customerLoans, ReplicaReadGuard replicaReads) {
 		this.repository = repository;
+		this.overdueLoanIndex = overdueLoanIndex;
+		this.availabilityIndex = availabilityIndex;
+		this.recordCounts = recordCounts;
+		this.customerLoans = customerLoans;
+		this.replicaReads = replicaReads;
 	}
 
+	/**
+	 * Gives the open loans of a database created before the open-loan column
+	 * their book id, so the unique constraint and the availability bitmap see
+	 * them.
+	 */
+	@PostConstruct
+	public void backfillOpenLoans() {
+		int rows = repository.backfillOpenBookIds();
+		if (rows > 0) {
+			log.info("Backfilled the open-loan column of {} loans", rows);
+		}
+	}
+
+	/**
+	 * Inserts the loan straight away and lets the open-loan unique constraint
+	 * reject a book that is already loaned, so concurrent checkouts of the same
+	 * book cannot both succeed, on this instance or any other. The loan
+	 * counters and the customer read model change in the same transaction.
+	 */
 	@Override
+	@Transactional
 	public Loan save(Loan loan) {
+		try {
+			Loan savedLoan = repository.saveAndFlush(loan);
+			countLoan(savedLoan);
+			customerLoans.add(savedLoan);
+			overdueLoanIndex.update(savedLoan);
+			availabilityIndex.update(savedLoan);
 
-		if (repository.existsByBookAndNotReturned(loan.getBook())) {
-			throw new BusinessException("Book already loaned");
+			return savedLoan;
+		} catch (DataIntegrityViolationException ex) {
+			if (isOpenLoanViolation(ex)) {
+				throw new BusinessException("Book already loaned");
+			}
+			throw ex;
 		}
-
-		return repository.save(loan);
 	}
 
 	@Override
@@ -40,28 +126,240 @@ public class LoanServiceImpl implements LoanService {
 	}
 
 	@Override
+	@Transactional
 	public Loan updateLoan(Loan loan) {
-		return repository.save(loan);
+		Loan updatedLoan = repository.save(loan);
+		customerLoans.updateReturned(updatedLoan);
+		overdueLoanIndex.update(updatedLoan);
+		availabilityIndex.update(updatedLoan);
+
+		return updatedLoan;
+	}
+
+	/**
+	 * Returns the open loans among {@code loanIds} and the open loans of the
+	 * books with {@code isbns}, resolving and updating them
+	 * {@value #RETURN_BATCH_SIZE} at a time with one select and one bulk update
+	 * per batch instead of loading and merging each loan. The selects lock the
+	 * loans they find, so every open loan seen is the one the update returns;
+	 * should the update still change fewer rows, the whole call fails instead
+	 * of reporting loans or freeing books someone else handled. The update
+	 * bumps the version as an entity update would; the read model follows in
+	 * the same transaction and the in-memory indexes once it commits.
+	 */
+	@Override
+	@Transactional
+	public LoanReturnsResultDTO returnLoans(Collection<Long> loanIds, Collection<String> isbns) {
+		Map<Long, OpenLoanDTO> open = new LinkedHashMap<>();
+		List<Long> alreadyReturned = new ArrayList<>();
+		List<Long> notFound = new ArrayList<>();
+		List<String> isbnsNotLoaned = new ArrayList<>();
+
+		forEachBatch(distinct(loanIds), batch -> {
+			Map<Long, OpenLoanDTO> found = repository.findReturnCandidatesById(batch).stream()
+					.collect(Collectors.toMap(OpenLoanDTO::getId, Function.identity()));
+			for (Long id : batch) {
+				OpenLoanDTO loan = found.get(id);
+				if (loan == null) {
+					notFound.add(id);
+				} else if (loan.getOpenBookId() == null) {
+					alreadyReturned.add(id);
+				} else {
+					open.put(id, loan);
+				}
+			}
+		});
+
+		forEachBatch(distinct(isbns), batch -> {
+			Set<String> loaned = new HashSet<>();
+			for (OpenLoanDTO loan : repository.findOpenByIsbns(batch)) {
+				loaned.add(loan.getIsbn());
+				open.putIfAbsent(loan.getId(), loan);
+			}
+			batch.stream().filter(isbn -> !loaned.contains(isbn)).forEach(isbnsNotLoaned::add);
+		});
+
+		List<Long> returned = new ArrayList<>(open.keySet());
+		forEachBatch(returned, batch -> {
+			if (repository.markReturned(batch) != batch.size()) {
+				throw new ObjectOptimisticLockingFailureException(Loan.class, batch);
+			}
+			customerLoans.markReturned(batch);
+		});
+
+		returned.forEach(overdueLoanIndex::remove);
+		availabilityIndex.markAvailable(
+				open.values().stream().map(OpenLoanDTO::getOpenBookId).collect(Collectors.toList()));
+
+		return LoanReturnsResultDTO.builder().returned(returned).alreadyReturned(alreadyReturned)
+				.notFound(notFound).isbnsNotLoaned(isbnsNotLoaned).build();
+	}
+
+	/**
+	 * Only the given filters are applied; without any, every loan is listed.
+	 * The total is the ISBN counter plus the customer counter, less the loans
+	 * of that customer for that ISBN when both are given. A customer alone is
+	 * answered by the customer read model.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanDTO> find(LoanFilterDTO filter, Pageable pageRequest) {
+		String isbn = filter.getIsbn();
+		String customer = filter.getCustomerName();
+		replicaReads.readFromReplica(filterKeys(isbn, customer));
+		if (isbn == null && customer != null) {
+			return customerLoans.findByCustomer(customer, pageRequest);
+		}
+		List<LoanDTO> content = repository.findByBookIsbnOrCustomer(isbn, customer, pageRequest);
+
+		return PageableExecutionUtils.getPage(content, pageRequest, () -> {
+			if (isbn == null && customer == null) {
+				return recordCounts.get(RecordCount.LOANS);
+			}
+			long total = 0;
+			if (isbn != null) {
+				total += recordCounts.get(RecordCount.isbnLoans(isbn));
+			}
+			if (customer != null) {
+				total += recordCounts.get(RecordCount.customerLoans(customer));
+			}
+			if (isbn != null && customer != null) {
+				total -= repository.countByBookIsbnAndCustomer(isbn, customer);
+			}
+			return total;
+		});
+	}
+
+	/**
+	 * Read from the primary, like {@link #getLoansVersionByBook} that the
+	 * endpoint tags it with: a replica could still hold the previous title or
+	 * loans under the new tag.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanDTO> getLoansByBook(Book book, Pageable pageable) {
+		return PageableExecutionUtils.getPage(repository.findByBook(book, pageable), pageable,
+				() -> recordCounts.get(RecordCount.bookLoans(book.getId())));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanDTO> getLoansByCustomer(String customer, Pageable pageable) {
+		replicaReads.readFromReplica(RecordCount.customerLoans(customer));
+		return customerLoans.findByCustomer(customer, pageable);
 	}
 
 	@Override
-	public Page<Loan> find(LoanFilterDTO filter, Pageable pageRequest) {
+	public Optional<BookLoansVersionDTO> getLoansVersionByBook(Long bookId) {
+		return repository.findLoansVersionByBookId(bookId);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO filter, String after, Pageable pageRequest) {
+		replicaReads.readFromReplica(filterKeys(filter.getIsbn(), filter.getCustomerName()));
+		Keyset keyset = Keyset.of(after, pageRequest.getSort(), CURSOR_SORTABLE);
 
-		return repository.findByBookIsbnOrCustomer(filter.getIsbn(), filter.getCustomerName(), pageRequest);
+		return repository.findByBookIsbnOrCustomerAfter(filter.getIsbn(), filter.getCustomerName(), keyset,
+				pageRequest.getPageSize());
 	}
 
+	/**
+	 * Read from the primary for the same reason as {@link #getLoansByBook}.
+	 */
 	@Override
-	public Page<Loan> getLoansByBook(Book book, Pageable pageable) {
-		return repository.findByBook(book, pageable);
+	@Transactional(readOnly = true)
+	public CursorPageDTO<LoanDTO> getLoansByBookAfter(Book book, String after, Pageable pageable) {
+		Keyset keyset = Keyset.of(after, pageable.getSort(), CURSOR_SORTABLE);
+
+		return repository.findByBookAfter(book, keyset, pageable.getPageSize());
 	}
 
-	
+	/**
+	 * Served from this instance's overdue index: loans opened or returned on
+	 * another instance show up once the index next reloads from the database.
+	 */
 	@Override
-	public List<Loan> getAllLateLoans() {
-		final Integer loanMaxDays = 4;
-		LocalDate threeDaysAgo = LocalDate.now().minusDays(loanMaxDays);
+	public Page<LoanDTO> findOverdue(Pageable pageRequest) {
+		return overdueLoanIndex.findOverdue(LocalDate.now(), pageRequest);
+	}
+
+	@Override
+	public BookAvailabilityDTO checkAvailability(List<Long> bookIds) {
+		return availabilityIndex.check(bookIds);
+	}
+
+	/**
+	 * The id range of the loans lent on or before {@code dueDate} and still
+	 * open, read from the database rather than this instance's index so that
+	 * every instance partitions the same range.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public IdRangeDTO findOverdueIdRange(LocalDate dueDate) {
+		return repository.findOverdueIdRange(dueDate);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<LoanDTO> findOverdueAfter(long afterId, long lastId, LocalDate dueDate, int size) {
+		return repository.findOverdueAfter(afterId, lastId, dueDate, PageRequest.of(0, size));
+	}
+
+	/**
+	 * Adds the loan to its counters, whose names also keep the reads of the
+	 * loan's book, ISBN and customer off the replicas for a while.
+	 */
+	private void countLoan(Loan loan) {
+		List<String> counters = new ArrayList<>();
+		counters.add(RecordCount.LOANS);
+		Book book = loan.getBook();
+		if (book != null) {
+			counters.add(RecordCount.bookLoans(book.getId()));
+			if (book.getIsbn() != null) {
+				counters.add(RecordCount.isbnLoans(book.getIsbn()));
+			}
+		}
+		if (loan.getCustomer() != null) {
+			counters.add(RecordCount.customerLoans(loan.getCustomer()));
+		}
+
+		counters.forEach(name -> recordCounts.add(name, 1));
+		replicaReads.recordWrites(counters);
+	}
+
+	private static String[] filterKeys(String isbn, String customer) {
+		if (isbn == null && customer == null) {
+			return new String[] { RecordCount.LOANS };
+		}
+		if (isbn == null) {
+			return new String[] { RecordCount.customerLoans(customer) };
+		}
+		if (customer == null) {
+			return new String[] { RecordCount.isbnLoans(isbn) };
+		}
+
+		return new String[] { RecordCount.isbnLoans(isbn), RecordCount.customerLoans(customer) };
+	}
+
+	private static <T> List<T> distinct(Collection<T> values) {
+		return values == null ? Collections.emptyList() : new ArrayList<>(new LinkedHashSet<>(values));
+	}
+
+	private static <T> void forEachBatch(List<T> values, Consumer<List<T>> batchProcessor) {
+		for (int from = 0; from < values.size(); from += RETURN_BATCH_SIZE) {
+			batchProcessor.accept(values.subList(from, Math.min(from + RETURN_BATCH_SIZE, values.size())));
+		}
+	}
+
+	private boolean isOpenLoanViolation(DataIntegrityViolationException ex) {
+		if (!(ex.getCause() instanceof ConstraintViolationException)) {
+			return false;
+		}
+
+		String constraintName = ((ConstraintViolationException) ex.getCause()).getConstraintName();
 
-		return repository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);
+		return constraintName != null && constraintName.toLowerCase().contains(Loan.OPEN_BOOK_CONSTRAINT);
 	}
 
 }
@@ -0,0 +1,220 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.rafaelvastag.api.library.model.entity.OutboxMail;
+import com.rafaelvastag.api.library.model.entity.OutboxMail.Status;
+import com.rafaelvastag.api.library.model.repository.OutboxMailRepository;
+import com.rafaelvastag.api.library.service.OutboxMailService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers the mails queued in the outbox table, one message per recipient,
+ * on a bounded worker pool with a global send rate limit. Failed sends are
+ * retried with exponential backoff until {@code max-attempts} is reached.
+ * Every claim counts as an attempt, so a mail whose worker died mid-send is
+ * released again only while it has attempts left.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxMailServiceImpl implements OutboxMailService {
+
+	private static final String STALE_CLAIM_ERROR = "Claim timed out while sending";
+
+	private final OutboxMailRepository repository;
+	private final JavaMailSender javaMailSender;
+	private final MeterRegistry meterRegistry;
+
+	@Value("${application.mail.default.remetent}")
+	private String mailRemetent;
+
+	@Value("${application.mail.outbox.parallelism}")
+	private int parallelism;
+
+	@Value("${application.mail.outbox.max-per-second}")
+	private double maxPerSecond;
+
+	@Value("${application.mail.outbox.batch-size}")
+	private int batchSize;
+
+	@Value("${application.mail.outbox.max-attempts}")
+	private int maxAttempts;
+
+	@Value("${application.mail.outbox.initial-backoff-seconds}")
+	private long initialBackoffSeconds;
+
+	@Value("${application.mail.outbox.claim-timeout-seconds}")
+	private long claimTimeoutSeconds;
+
+	private ExecutorService workers;
+	private SendRateLimiter rateLimiter;
+	private Timer sendTimer;
+	private Counter failedCounter;
+
+	@PostConstruct
+	public void start() {
+		this.workers = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("mail-outbox-"));
+		this.rateLimiter = new SendRateLimiter(maxPerSecond);
+		this.sendTimer = Timer.builder("mail.outbox.send").description("Time to hand one outbox mail to the SMTP server")
+				.publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+		this.failedCounter = Counter.builder("mail.outbox.failed")
+				.description("Outbox mails given up after the last retry").register(meterRegistry);
+
+		Gauge.builder("mail.outbox.pending", repository, repo -> repo.countByStatus(Status.PENDING))
+				.description("Outbox mails waiting to be sent").register(meterRegistry);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		workers.shutdown();
+		workers.awaitTermination(30, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Sends one batch per tick, so a large backlog never holds a scheduler
+	 * thread for longer than one rate-limited batch.
+	 */
+	@Scheduled(fixedDelayString = "${application.mail.outbox.poll-interval-ms}")
+	public void poll() {
+		dispatchPendingMails();
+	}
+
+	/**
+	 * Claims one batch of due mails and sends it on the worker pool, returning
+	 * the number claimed once every one of them has been attempted.
+	 */
+	@Override
+	public int dispatchPendingMails() {
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime staleBefore = now.minusSeconds(claimTimeoutSeconds);
+		int failed = repository.failStaleClaims(Status.FAILED, Status.SENDING, staleBefore, maxAttempts,
+				STALE_CLAIM_ERROR);
+		if (failed > 0) {
+			log.warn("Gave up {} mails whose last attempt never finished", failed);
+			failedCounter.increment(failed);
+		}
+		repository.releaseStaleClaims(Status.PENDING, Status.SENDING, staleBefore, maxAttempts);
+
+		List<Long> dueIds = repository.findDueIds(Status.PENDING, now, PageRequest.of(0, batchSize));
+		List<CompletableFuture<Void>> sends = new ArrayList<>(dueIds.size());
+
+		for (Long id : dueIds) {
+			if (repository.claim(id, Status.PENDING, Status.SENDING, now) == 1) {
+				sends.add(CompletableFuture.runAsync(() -> send(id), workers));
+			}
+		}
+
+		CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+
+		return sends.size();
+	}
+
+	/**
+	 * Never throws: a mail that can't even be loaded or saved stays claimed
+	 * until its claim goes stale.
+	 */
+	private void send(Long id) {
+		try {
+			repository.findById(id).ifPresent(this::send);
+		} catch (RuntimeException ex) {
+			log.warn("Could not attempt mail {}", id, ex);
+		}
+	}
+
+	private void send(OutboxMail mail) {
+		try {
+			SimpleMailMessage mailMessage = new SimpleMailMessage();
+			mailMessage.setFrom(mailRemetent);
+			mailMessage.setSubject(mail.getSubject());
+			mailMessage.setText(mail.getMessage());
+			mailMessage.setTo(mail.getRecipient());
+
+			rateLimiter.acquire();
+			sendTimer.record(() -> javaMailSender.send(mailMessage));
+
+			mail.setStatus(Status.SENT);
+			mail.setSentAt(LocalDateTime.now());
+
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			scheduleRetry(mail, ex);
+
+		} catch (RuntimeException ex) {
+			scheduleRetry(mail, ex);
+		}
+
+		repository.save(mail);
+	}
+
+	private void scheduleRetry(OutboxMail mail, Exception ex) {
+		int attempt = mail.getAttempts();
+		mail.setLastError(abbreviate(ex.getMessage()));
+
+		if (attempt >= maxAttempts) {
+			log.warn("Giving up mail {} to {} after {} attempts", mail.getId(), mail.getRecipient(), attempt);
+			mail.setStatus(Status.FAILED);
+			failedCounter.increment();
+			return;
+		}
+
+		long backoffSeconds = initialBackoffSeconds << (attempt - 1);
+		mail.setStatus(Status.PENDING);
+		mail.setNextAttemptAt(LocalDateTime.now().plusSeconds(backoffSeconds));
+	}
+
+	private String abbreviate(String message) {
+		return message == null || message.length() <= 500 ? message : message.substring(0, 500);
+	}
+
+	/**
+	 * Spaces sends evenly so the whole pool stays under {@code permitsPerSecond}.
+	 */
+	static class SendRateLimiter {
+
+		private final long intervalNanos;
+		private long nextFreeSlot = System.nanoTime();
+
+		SendRateLimiter(double permitsPerSecond) {
+			this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+		}
+
+		void acquire() throws InterruptedException {
+			long slot;
+			synchronized (this) {
+				long now = System.nanoTime();
+				slot = Math.max(now, nextFreeSlot);
+				nextFreeSlot = slot + intervalNanos;
+			}
+
+			long waitNanos = slot - System.nanoTime();
+			if (waitNanos > 0) {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+		}
+	}
+
+}
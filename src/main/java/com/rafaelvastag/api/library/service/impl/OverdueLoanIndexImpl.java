@@ -0,0 +1,233 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.mapper.LoanMapper;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.OverdueLoanIndex;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Open loans bucketed by due date, so the overdue ones are the head of the map
+ * and listing them costs O(overdue) instead of a table scan. Built from the
+ * database at startup and kept up to date by {@link LoanServiceImpl} once each
+ * loan write commits. Loans opened or returned on another instance are picked
+ * up by a periodic reload from the database, so they show up or drop out up to
+ * {@code application.loans.overdue-index.refresh-interval-ms} later.
+ * The late-loan job reads the database instead.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OverdueLoanIndexImpl implements OverdueLoanIndex {
+
+	private static final int REBUILD_CHUNK_SIZE = 500;
+
+	private final LoanRepository repository;
+	private final EntityManager entityManager;
+	private final LoanMapper loanMapper;
+
+	@Value("${application.loans.max-days}")
+	private int loanMaxDays;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final NavigableMap<LocalDate, Map<Long, LoanDTO>> loansByDueDate = new TreeMap<>();
+
+	private final Map<Long, LocalDate> dueDates = new HashMap<>();
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional(readOnly = true)
+	public void rebuild() {
+		log.info("Overdue loan index built with {} open loans", reload());
+	}
+
+	/**
+	 * Replaces the index with the open loans in the database, so the loans
+	 * opened or returned on other instances are picked up.
+	 */
+	@Scheduled(initialDelayString = "${application.loans.overdue-index.refresh-interval-ms}",
+			fixedDelayString = "${application.loans.overdue-index.refresh-interval-ms}")
+	@Transactional(readOnly = true)
+	public void refresh() {
+		log.debug("Overdue loan index refreshed with {} open loans", reload());
+	}
+
+	/**
+	 * Indexes an open loan under its due date and drops a returned one, when
+	 * the current transaction commits.
+	 */
+	@Override
+	public void update(Loan loan) {
+		if (Boolean.TRUE.equals(loan.getReturned())) {
+			remove(loan.getId());
+			return;
+		}
+
+		Long loanId = loan.getId();
+		LocalDate dueDate = dueDate(loan);
+		LoanDTO entry = loanMapper.toDto(loan);
+
+		afterCommit(() -> index(loanId, dueDate, entry));
+	}
+
+	@Override
+	public void remove(Long loanId) {
+		afterCommit(() -> unindex(loanId));
+	}
+
+	@Override
+	public List<LoanDTO> findOverdue(LocalDate today) {
+		lock.readLock().lock();
+		try {
+			List<LoanDTO> overdue = new ArrayList<>();
+			overdueBuckets(today).values().forEach(bucket -> overdue.addAll(bucket.values()));
+			return overdue;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Page<LoanDTO> findOverdue(LocalDate today, Pageable pageRequest) {
+		long offset = pageRequest.getOffset();
+		List<LoanDTO> content = new ArrayList<>(pageRequest.getPageSize());
+		long total = 0;
+
+		lock.readLock().lock();
+		try {
+			for (Map<Long, LoanDTO> bucket : overdueBuckets(today).values()) {
+				for (LoanDTO loan : bucket.values()) {
+					if (total >= offset && content.size() < pageRequest.getPageSize()) {
+						content.add(loan);
+					}
+					total++;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return new PageImpl<>(content, pageRequest, total);
+	}
+
+	/**
+	 * A loan is overdue once its due date is today or earlier, the same window
+	 * the late-loan mail job has always used.
+	 */
+	private NavigableMap<LocalDate, Map<Long, LoanDTO>> overdueBuckets(LocalDate today) {
+		return loansByDueDate.headMap(today, true);
+	}
+
+	/**
+	 * Applies a change once the current transaction commits, so a rolled back
+	 * loan write never reaches the index, or straight away outside of one.
+	 */
+	private void afterCommit(Runnable change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			apply(change);
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				apply(change);
+			}
+		});
+	}
+
+	private void apply(Runnable change) {
+		lock.writeLock().lock();
+		try {
+			change.run();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the open loans into new maps and swaps them in, so readers never
+	 * see a half-built index. A loan write committed while the loans are read
+	 * may be undone by the swap until the next refresh.
+	 */
+	private int reload() {
+		NavigableMap<LocalDate, Map<Long, LoanDTO>> byDueDate = new TreeMap<>();
+		Map<Long, LocalDate> loanDueDates = new HashMap<>();
+		int indexed = 0;
+
+		try (Stream<Loan> openLoans = repository.streamOpenLoans()) {
+			for (Loan loan : (Iterable<Loan>) openLoans::iterator) {
+				LocalDate dueDate = dueDate(loan);
+				byDueDate.computeIfAbsent(dueDate, date -> new LinkedHashMap<>()).put(loan.getId(),
+						loanMapper.toDto(loan));
+				loanDueDates.put(loan.getId(), dueDate);
+
+				if (++indexed % REBUILD_CHUNK_SIZE == 0) {
+					entityManager.clear();
+				}
+			}
+		}
+
+		apply(() -> {
+			loansByDueDate.clear();
+			loansByDueDate.putAll(byDueDate);
+			dueDates.clear();
+			dueDates.putAll(loanDueDates);
+		});
+
+		return indexed;
+	}
+
+	private LocalDate dueDate(Loan loan) {
+		return loan.getLoanDate().plusDays(loanMaxDays);
+	}
+
+	private void index(Long loanId, LocalDate dueDate, LoanDTO entry) {
+		unindex(loanId);
+		loansByDueDate.computeIfAbsent(dueDate, date -> new LinkedHashMap<>()).put(loanId, entry);
+		dueDates.put(loanId, dueDate);
+	}
+
+	private void unindex(Long loanId) {
+		LocalDate dueDate = dueDates.remove(loanId);
+		if (dueDate == null) {
+			return;
+		}
+
+		Map<Long, LoanDTO> bucket = loansByDueDate.get(dueDate);
+		bucket.remove(loanId);
+		if (bucket.isEmpty()) {
+			loansByDueDate.remove(dueDate);
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.util.Collection;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rafaelvastag.api.library.model.entity.RecordCount;
+import com.rafaelvastag.api.library.model.repository.RecordCountRepository;
+import com.rafaelvastag.api.library.service.RecordCountService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counters in the {@code record_count} table. Changes run in the caller's
+ * transaction, so a counter moves together with the rows it counts; only the
+ * first change of a new counter creates its row, in a short transaction of
+ * its own so two callers racing to create it do not roll each other back.
+ */
+@Service
+@Slf4j
+public class RecordCountServiceImpl implements RecordCountService {
+
+	private final RecordCountRepository repository;
+
+	private final TransactionTemplate newTransaction;
+
+	private final TransactionTemplate transaction;
+
+	public RecordCountServiceImpl(RecordCountRepository repository, PlatformTransactionManager transactionManager) {
+		this.repository = repository;
+		this.newTransaction = new TransactionTemplate(transactionManager);
+		this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.transaction = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Fills each kind of counter from its counted table the first time the
+	 * application starts against a database without it, so a counter added
+	 * later is backfilled even where the older ones already exist.
+	 */
+	@PostConstruct
+	public void backfill() {
+		int counters = backfill(RecordCount.BOOKS, () -> repository.existsById(RecordCount.BOOKS),
+				repository::backfillBooks)
+				+ backfill(RecordCount.LOANS, () -> repository.existsById(RecordCount.LOANS),
+						repository::backfillLoans)
+				+ backfill(RecordCount.BOOK_LOANS_PREFIX,
+						() -> repository.existsByNameStartingWith(RecordCount.BOOK_LOANS_PREFIX),
+						repository::backfillBookLoans)
+				+ backfill(RecordCount.ISBN_LOANS_PREFIX,
+						() -> repository.existsByNameStartingWith(RecordCount.ISBN_LOANS_PREFIX),
+						repository::backfillIsbnLoans)
+				+ backfill(RecordCount.CUSTOMER_LOANS_PREFIX,
+						() -> repository.existsByNameStartingWith(RecordCount.CUSTOMER_LOANS_PREFIX),
+						repository::backfillCustomerLoans);
+
+		if (counters > 0) {
+			log.info("Backfilled {} counters", counters);
+		}
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public long get(String name) {
+		return repository.findTotal(name).orElse(0L);
+	}
+
+	@Override
+	@Transactional
+	public void add(String name, long delta) {
+		if (repository.increment(name, delta) > 0) {
+			return;
+		}
+
+		create(name);
+		repository.increment(name, delta);
+	}
+
+	@Override
+	@Transactional
+	public void remove(Collection<String> names) {
+		repository.deleteByNames(names);
+	}
+
+	/**
+	 * Runs one backfill in a transaction, unless its counters exist or another
+	 * instance starting at the same time wrote them first.
+	 */
+	private int backfill(String counters, BooleanSupplier exists, IntSupplier insert) {
+		try {
+			Integer rows = transaction.execute(status -> exists.getAsBoolean() ? 0 : insert.getAsInt());
+			return rows == null ? 0 : rows;
+		} catch (DataIntegrityViolationException ex) {
+			log.debug("Counters {} were backfilled concurrently", counters);
+			return 0;
+		}
+	}
+
+	private void create(String name) {
+		try {
+			newTransaction.executeWithoutResult(status -> repository.create(name));
+		} catch (DataIntegrityViolationException ex) {
+			log.debug("Counter {} was created concurrently", name);
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.rafaelvastag.api.library.service.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
+
+/**
+ * Decides which read-only transactions may run on a replica. A read opts in
+ * with the keys of the data it shows, the same names as its record counters;
+ * it stays on the primary when any of them was written less than
+ * {@code application.datasource.replica.max-lag-ms} ago, so a loan just
+ * created is never missing from the next read of its book or customer.
+ */
+@Service
+public class ReplicaReadGuardImpl implements ReplicaReadGuard {
+
+	@Value("${application.datasource.replica.max-lag-ms}")
+	private long maxLagMs;
+
+	private Cache<String, Boolean> recentWrites;
+
+	@PostConstruct
+	public void init() {
+		recentWrites = Caffeine.newBuilder().expireAfterWrite(maxLagMs, TimeUnit.MILLISECONDS).build();
+	}
+
+	/**
+	 * Remembers the keys once the current transaction commits, or straight
+	 * away outside of one.
+	 */
+	@Override
+	public void recordWrites(Collection<String> keys) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			keys.forEach(key -> recentWrites.put(key, Boolean.TRUE));
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				keys.forEach(key -> recentWrites.put(key, Boolean.TRUE));
+			}
+		});
+	}
+
+	/**
+	 * Lets the current read-only transaction use a replica unless one of
+	 * {@code keys} was written recently. Must be called before its first
+	 * statement; the choice ends with the transaction.
+	 */
+	@Override
+	public void readFromReplica(String... keys) {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+				|| TransactionSynchronizationManager.hasResource(this)
+				|| Arrays.stream(keys).anyMatch(key -> recentWrites.getIfPresent(key) != null)) {
+			return;
+		}
+
+		TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(ReplicaReadGuardImpl.this);
+			}
+		});
+	}
+
+	@Override
+	public boolean isReplicaRead() {
+		return TransactionSynchronizationManager.hasResource(this);
+	}
+
+}
@@ -1,38 +1,124 @@
 package com.rafaelvastag.api.library.service.impl;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.JobPartition;
 import com.rafaelvastag.api.library.service.EmailService;
+import com.rafaelvastag.api.library.service.JobCoordinator;
 import com.rafaelvastag.api.library.service.LoanService;
 import com.rafaelvastag.api.library.service.ScheduleService;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 
+/**
+ * Runs the nightly late-loan job across every instance: the first to start
+ * splits the overdue loan ids into partitions, and each instance claims and
+ * mails partitions until none are left. Partitions a crashed instance left
+ * behind are resumed from their checkpoint by the next poll of any instance.
+ */
 @Service
 @RequiredArgsConstructor
 public class ScheduleServiceImpl implements ScheduleService{
 
 	private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
+
+	private static final String LATE_LOANS_JOB = "late-loans";
 	
 	@Value("${application.mail.lateloans.message}")
 	private String message; 
+
+	@Value("${application.lateloans.chunk-size}")
+	private int chunkSize;
+
+	@Value("${application.lateloans.partition-size}")
+	private long partitionSize;
+
+	@Value("${application.loans.max-days}")
+	private int loanMaxDays;
 	
 	private final LoanService loanService;
 	private final EmailService emailService;
+	private final JobCoordinator jobCoordinator;
+	private final MeterRegistry meterRegistry;
+
+	private Timer lateLoansTimer;
+	private Counter lateLoansRecipients;
+
+	@PostConstruct
+	public void registerMeters() {
+		this.lateLoansTimer = Timer.builder("jobs.late.loans.duration")
+				.description("Duration of the nightly late-loan mail job").register(meterRegistry);
+		this.lateLoansRecipients = Counter.builder("jobs.late.loans.recipients")
+				.description("Late-loan mails queued by the nightly job").register(meterRegistry);
+	}
 	
 	@Override
 	@Scheduled(cron = CRON_LATE_LOANS)
 	public void sendMailToLateLoans() {
-		List<Loan> allLateLoans = loanService.getAllLateLoans();
-		List<String> customerEmailsLateLoansList = allLateLoans.stream().map( loan -> loan.getEmailCustomer()).collect(Collectors.toList());
-		
-		emailService.sendMails(message, customerEmailsLateLoansList);
+		lateLoansTimer.record(() -> {
+			LocalDate today = LocalDate.now();
+			LocalDate dueDate = today.minusDays(loanMaxDays);
+
+			jobCoordinator.plan(LATE_LOANS_JOB, today.toString(), () -> loanService.findOverdueIdRange(dueDate),
+					partitionSize);
+			processLateLoanPartitions();
+		});
+	}
+
+	/**
+	 * Picks up partitions that are still pending or whose owner stopped
+	 * heartbeating.
+	 */
+	@Scheduled(fixedDelayString = "${application.jobs.poll-interval-ms}")
+	public void resumeLateLoans() {
+		processLateLoanPartitions();
+	}
+
+	private void processLateLoanPartitions() {
+		Optional<JobPartition> partition;
+		while ((partition = jobCoordinator.claim(LATE_LOANS_JOB)).isPresent()) {
+			process(partition.get());
+		}
+	}
+
+	/**
+	 * Mails the late loans of a partition chunk by chunk from its checkpoint,
+	 * each chunk's mails committed with the checkpoint past it.
+	 */
+	private void process(JobPartition partition) {
+		LocalDate dueDate = LocalDate.parse(partition.getRunKey()).minusDays(loanMaxDays);
+
+		while (partition.getCheckpointId() < partition.getLastId()) {
+			List<LoanDTO> lateLoans = loanService.findOverdueAfter(partition.getCheckpointId(),
+					partition.getLastId(), dueDate, chunkSize);
+			long processedId = lateLoans.size() < chunkSize ? partition.getLastId()
+					: lateLoans.get(lateLoans.size() - 1).getId();
+			List<String> customerEmailsLateLoansList = lateLoans.stream().map( loan -> loan.getEmailCustomer()).collect(Collectors.toList());
+
+			if (!jobCoordinator.checkpoint(partition, processedId, () -> {
+				if (!customerEmailsLateLoansList.isEmpty()) {
+					emailService.sendMails(message, customerEmailsLateLoansList);
+				}
+			})) {
+				return;
+			}
+			lateLoansRecipients.increment(customerEmailsLateLoansList.size());
+		}
+
+		jobCoordinator.complete(partition);
 	}
 
 }
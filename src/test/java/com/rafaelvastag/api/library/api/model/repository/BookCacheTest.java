@@ -0,0 +1,117 @@
+package com.rafaelvastag.api.library.api.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.rafaelvastag.api.library.config.CacheConfig;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ CacheConfig.class, SimpleMeterRegistry.class })
+class BookCacheTest {
+
+	@Autowired
+	BookRepository repository;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		repository.deleteAll();
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	@DisplayName("Should serve a book from the second-level cache and never a stale copy after an update")
+	void cacheBookByIdTest() {
+		// Scenery
+		Book book = repository.save(Book.builder().title("Title").author("Author").isbn("123").build());
+
+		// Execution
+		repository.findById(book.getId());
+		repository.findById(book.getId());
+
+		Book loaded = repository.findById(book.getId()).get();
+		loaded.setTitle("New title");
+		repository.save(loaded);
+
+		// Assertion
+		assertThat(statistics.getDomainDataRegionStatistics(Book.CACHE_REGION).getHitCount()).isGreaterThan(0);
+		assertThat(repository.findById(book.getId()).get().getTitle()).isEqualTo("New title");
+	}
+
+	@Test
+	@DisplayName("Should patch a book at its version and evict only that book from the second-level cache")
+	void patchEvictsOnlyThePatchedBookTest() {
+		// Scenery
+		Book book = repository.save(Book.builder().title("Title").author("Author").isbn("123").build());
+		Book other = repository.save(Book.builder().title("Other").author("Author").isbn("456").build());
+		repository.findById(book.getId());
+		repository.findById(other.getId());
+		statistics.clear();
+
+		// Execution
+		int stale = repository.patch(book.getId(), book.getVersion() + 1, "Stale", null);
+		int patched = repository.patch(book.getId(), book.getVersion(), "New title", null);
+		repository.findById(other.getId());
+		Book found = repository.findById(book.getId()).get();
+
+		// Assertion
+		assertThat(stale).isZero();
+		assertThat(patched).isOne();
+		assertThat(found.getTitle()).isEqualTo("New title");
+		assertThat(found.getAuthor()).isEqualTo("Author");
+		assertThat(found.getVersion()).isEqualTo(book.getVersion() + 1);
+		assertThat(statistics.getDomainDataRegionStatistics(Book.CACHE_REGION).getHitCount()).isOne();
+	}
+
+	@Test
+	@DisplayName("Should cache the ISBN lookup and drop it once the book changes or is deleted")
+	void cacheFindByIsbnTest() {
+		// Scenery
+		Book book = repository.save(Book.builder().title("Title").author("Author").isbn("123").build());
+
+		// Execution
+		repository.findByIsbn("123");
+		repository.findByIsbn("123");
+		long queryHits = statistics.getQueryRegionStatistics(Book.ISBN_QUERY_CACHE_REGION).getHitCount();
+
+		book = repository.findById(book.getId()).get();
+		book.setTitle("New title");
+		book = repository.save(book);
+		String titleAfterUpdate = repository.findByIsbn("123").get().getTitle();
+
+		repository.delete(book);
+
+		// Assertion
+		assertThat(queryHits).isOne();
+		assertThat(titleAfterUpdate).isEqualTo("New title");
+		assertThat(repository.findByIsbn("123")).isEmpty();
+	}
+
+}
@@ -1,20 +1,33 @@
 package com.rafaelvastag.api.library.api.model.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.model.repository.Keyset;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -45,6 +58,20 @@ class BookRepositoryTest {
 
 	}
 
+	@Test
+	@DisplayName("Should read only the version of a book")
+	void findVersionByIdTest() {
+		// Scenery
+		Book book = entityManager.persistFlushFind(createNewBook("123"));
+
+		// Execution
+		Optional<Long> version = repository.findVersionById(book.getId());
+
+		// Assertion
+		assertThat(version).contains(book.getVersion());
+		assertThat(repository.findVersionById(book.getId() + 1000)).isEmpty();
+	}
+
 	@Test
 	@DisplayName("Should return FALSE when NOT exists a book with the isbn inputed")
 	void returnFalseWhenIsbnNotExists() {
@@ -127,8 +154,93 @@ class BookRepositoryTest {
 
 	}
 
+	@Test
+	@DisplayName("Should walk the books by title with a keyset cursor")
+	void findAfterTest() {
+		// Scenery
+		entityManager.persist(Book.builder().title("C").author("Author").isbn("1").build());
+		entityManager.persist(Book.builder().title("A").author("Author").isbn("2").build());
+		entityManager.persist(Book.builder().title("B").author("Author").isbn("3").build());
+		Example<Book> all = Example.of(new Book());
+		HashSet<String> sortable = new HashSet<>(Arrays.asList("id", "title"));
+
+		// Execution
+		CursorPageDTO<Book> first = repository.findAfter(all, Keyset.of("", Sort.by("title"), sortable), 2);
+		CursorPageDTO<Book> second = repository.findAfter(all, Keyset.of(first.getNext(), Sort.unsorted(), sortable), 2);
+
+		// Assertion
+		assertThat(first.getContent()).extracting(Book::getTitle).containsExactly("A", "B");
+		assertThat(first.getNext()).isNotNull();
+		assertThat(second.getContent()).extracting(Book::getTitle).containsExactly("C");
+		assertThat(second.getNext()).isNull();
+	}
+
+	@Test
+	@DisplayName("Should walk books without a sort value through a keyset cursor in both directions")
+	void findAfterNullValuesTest() {
+		// Scenery
+		entityManager.persist(Book.builder().title("B").author("Author").isbn("1").build());
+		entityManager.persist(Book.builder().author("Author").isbn("2").build());
+		entityManager.persist(Book.builder().title("A").author("Author").isbn("3").build());
+		entityManager.persist(Book.builder().author("Author").isbn("4").build());
+		Example<Book> all = Example.of(new Book());
+		HashSet<String> sortable = new HashSet<>(Arrays.asList("id", "title"));
+
+		// Execution
+		List<String> ascending = walk(all, Sort.by("title"), sortable);
+		List<String> descending = walk(all, Sort.by(Sort.Direction.DESC, "title"), sortable);
+
+		// Assertion
+		assertThat(ascending).containsExactly("2", "4", "3", "1");
+		assertThat(descending).containsExactly("1", "3", "4", "2");
+	}
+
+	@Test
+	@DisplayName("Should insert a batch of books and find which ISBNs already exist")
+	void insertAllTest() {
+		// Scenery
+		List<Book> books = IntStream.range(0, 120).mapToObj(i -> createNewBook("batch-" + i))
+				.collect(Collectors.toList());
+
+		// Execution
+		repository.insertAll(books);
+
+		// Assertion
+		assertThat(books).extracting(Book::getId).doesNotContainNull().doesNotHaveDuplicates();
+		assertThat(repository.count()).isEqualTo(120);
+		assertThat(repository.findExistingIsbns(Arrays.asList("batch-0", "batch-119", "other")))
+				.containsExactlyInAnyOrder("batch-0", "batch-119");
+	}
+
+	@Test
+	@DisplayName("Should reject a second book with the same ISBN by the ISBN constraint")
+	void rejectDuplicatedIsbnTest() {
+		// Scenery
+		repository.saveAndFlush(createNewBook("123"));
+
+		// Execution
+		Throwable exception = catchThrowable(() -> repository.saveAndFlush(createNewBook("123")));
+
+		// Assertion
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class)
+				.hasCauseInstanceOf(ConstraintViolationException.class);
+		assertThat(((ConstraintViolationException) exception.getCause()).getConstraintName().toLowerCase())
+				.contains(Book.ISBN_CONSTRAINT);
+	}
+
 	private Book createNewBook(String isbn) {
 		Book book = Book.builder().title("Title").author("Author").isbn(isbn).build();
 		return book;
 	}
+	private List<String> walk(Example<Book> example, Sort sort, HashSet<String> sortable) {
+		List<String> isbns = new ArrayList<>();
+		CursorPageDTO<Book> page = repository.findAfter(example, Keyset.of("", sort, sortable), 1);
+		page.getContent().forEach(book -> isbns.add(book.getIsbn()));
+		while (page.getNext() != null) {
+			page = repository.findAfter(example, Keyset.of(page.getNext(), Sort.unsorted(), sortable), 1);
+			page.getContent().forEach(book -> isbns.add(book.getIsbn()));
+		}
+		return isbns;
+	}
+
 }
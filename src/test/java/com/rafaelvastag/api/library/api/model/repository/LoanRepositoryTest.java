@@ -1,23 +1,40 @@
 package com.rafaelvastag.api.library.api.model.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.assertj.core.groups.Tuple;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
-import org.springframework.data.domain.Page;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.rafaelvastag.api.library.dto.BookLoansVersionDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.dto.IdRangeDTO;
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.dto.OpenLoanDTO;
+import com.rafaelvastag.api.library.exception.BusinessException;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.repository.Keyset;
 import com.rafaelvastag.api.library.model.repository.LoanRepository;
 
 @ExtendWith(SpringExtension.class)
@@ -32,17 +49,22 @@ class LoanRepositoryTest {
 	private LoanRepository repository;
 
 	@Test
-	@DisplayName("Should verify if exists a loan not returned for this book")
-	void existsByBookAndNotReturnedTest() {
-		Book book = createNewBook("123");
-		Loan loan = createLoan(book, LocalDate.now());
+	@DisplayName("Should backfill the open-loan column of the newest open loan of each book")
+	void backfillOpenBookIdsTest() {
+		Book book = entityManager.persist(createNewBook("123"));
+		Loan older = entityManager.persist(createLoan(book, LocalDate.now()));
+		entityManager.persist(createReturnedLoan(book, LocalDate.now()));
+		Loan newer = entityManager.persist(createLoan(entityManager.persist(createNewBook("456")), LocalDate.now()));
+		entityManager.flush();
+		entityManager.getEntityManager().createNativeQuery(" update loan set open_book_id = null, id_book = ?1 ")
+				.setParameter(1, book.getId()).executeUpdate();
+		entityManager.clear();
 
-		entityManager.persist(book);
-		entityManager.persist(loan);
+		int rows = repository.backfillOpenBookIds();
 
-		boolean exists = repository.existsByBookAndNotReturned(book);
-
-		assertThat(exists).isTrue();
+		assertThat(rows).isOne();
+		assertThat(repository.findById(older.getId()).get().getOpenBookId()).isNull();
+		assertThat(repository.findById(newer.getId()).get().getOpenBookId()).isEqualTo(book.getId());
 	}
 
 	@Test
@@ -50,14 +72,55 @@ class LoanRepositoryTest {
 	void findByBookIsbnOrCustomerName() {
 		createAndPersistLoanWithBook(LocalDate.now());
 
-		Page<Loan> result = repository.findByBookIsbnOrCustomer("123", "Customer", PageRequest.of(0, 10));
+		List<LoanDTO> result = repository.findByBookIsbnOrCustomer("123", "Customer", PageRequest.of(0, 10));
 		
-		assertThat(result.getContent()).hasSize(1);
-		assertThat(result.getPageable().getPageSize()).isEqualTo(10);
-		assertThat(result.getPageable().getPageNumber()).isZero();
-		assertThat(result.getTotalElements()).isOne();
+		assertThat(result).hasSize(1);
+		assertThat(repository.countByBookIsbnAndCustomer("123", "Customer")).isOne();
+		assertThat(repository.countByBookIsbnAndCustomer("123", "Other")).isZero();
 	}
 	
+	@Test
+	@DisplayName("Should merge the ISBN and customer lookups in id order without duplicates")
+	void findByBookIsbnOrCustomerMergeTest() {
+		Book first = entityManager.persist(createNewBook("111"));
+		Book second = entityManager.persist(createNewBook("222"));
+		Loan annFirst = entityManager.persist(Loan.builder().book(first).customer("Ann").returned(true).build());
+		Loan annSecond = entityManager.persist(Loan.builder().book(second).customer("Ann").returned(true).build());
+		Loan bobFirst = entityManager.persist(Loan.builder().book(first).customer("Bob").build());
+		entityManager.persist(Loan.builder().book(second).customer("Bob").build());
+
+		List<LoanDTO> firstPage = repository.findByBookIsbnOrCustomer("111", "Ann", PageRequest.of(0, 2));
+		List<LoanDTO> secondPage = repository.findByBookIsbnOrCustomer("111", "Ann", PageRequest.of(1, 2));
+		List<LoanDTO> descending = repository.findByBookIsbnOrCustomer("111", "Ann",
+				PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "id")));
+		CursorPageDTO<LoanDTO> cursorPage = repository.findByBookIsbnOrCustomerAfter("111", "Ann",
+				Keyset.of(null, Sort.by("id"), Collections.singleton("id")), 2);
+
+		assertThat(firstPage).extracting(LoanDTO::getId).containsExactly(annFirst.getId(), annSecond.getId());
+		assertThat(secondPage).extracting(LoanDTO::getId).containsExactly(bobFirst.getId());
+		assertThat(descending).extracting(LoanDTO::getId).containsExactly(bobFirst.getId(), annSecond.getId(),
+				annFirst.getId());
+		assertThat(cursorPage.getContent()).extracting(LoanDTO::getId).containsExactly(annFirst.getId(),
+				annSecond.getId());
+		assertThat(cursorPage.getNext()).isNotNull();
+	}
+
+	@Test
+	@DisplayName("Should only filter by the given ISBN or customer")
+	void findByBookIsbnOrCustomerSingleFilterTest() {
+		Book first = entityManager.persist(createNewBook("111"));
+		Book second = entityManager.persist(createNewBook("222"));
+		Loan annFirst = entityManager.persist(Loan.builder().book(first).customer("Ann").returned(true).build());
+		entityManager.persist(Loan.builder().book(second).customer("Ann").build());
+		Loan bobFirst = entityManager.persist(Loan.builder().book(first).customer("Bob").build());
+
+		assertThat(repository.findByBookIsbnOrCustomer("111", null, PageRequest.of(0, 10)))
+				.extracting(LoanDTO::getId).containsExactly(annFirst.getId(), bobFirst.getId());
+		assertThat(repository.findByBookIsbnOrCustomer(null, "Bob", PageRequest.of(0, 10)))
+				.extracting(LoanDTO::getId).containsExactly(bobFirst.getId());
+		assertThat(repository.findByBookIsbnOrCustomer(null, null, PageRequest.of(0, 10))).hasSize(3);
+	}
+
 	@Test
 	@DisplayName("Should return loans with loan date < 3 days and not returned")
 	void findByLoanDateLessThanAndNotReturnedTest() {
@@ -68,6 +131,178 @@ class LoanRepositoryTest {
 		assertThat(result).hasSize(1).contains(loan);
 	}
 
+	@Test
+	@DisplayName("Should stream only the open loans, with their books")
+	void streamOpenLoansTest() {
+		Loan open = createAndPersistLoanWithBook(LocalDate.now());
+		entityManager.persist(createReturnedLoan(open.getBook(), LocalDate.now().minusDays(10L)));
+
+		try (Stream<Loan> result = repository.streamOpenLoans()) {
+			assertThat(result.collect(Collectors.toList())).containsExactly(open);
+		}
+	}
+
+	@Test
+	@DisplayName("Should stream the ids of the books with an open loan")
+	void streamLoanedBookIdsTest() {
+		Loan open = createAndPersistLoanWithBook(LocalDate.now());
+		Loan returned = entityManager.persist(createLoan(entityManager.persist(createNewBook("456")), LocalDate.now()));
+		returned.setReturned(true);
+		repository.saveAndFlush(returned);
+
+		try (Stream<Long> result = repository.streamLoanedBookIds()) {
+			assertThat(result.collect(Collectors.toList())).containsExactly(open.getBook().getId());
+		}
+	}
+
+	@Test
+	@DisplayName("Should project the loans of a book with their book details")
+	void findByBookTest() {
+		Loan loan = createAndPersistLoanWithBook(LocalDate.now());
+
+		List<LoanDTO> result = repository.findByBook(loan.getBook(), PageRequest.of(0, 10));
+
+		assertThat(result).hasSize(1);
+		LoanDTO loanDTO = result.get(0);
+		assertThat(loanDTO.getId()).isEqualTo(loan.getId());
+		assertThat(loanDTO.getCustomerName()).isEqualTo("Customer");
+		assertThat(loanDTO.getIsbn()).isEqualTo("123");
+		assertThat(loanDTO.getBook().getId()).isEqualTo(loan.getBook().getId());
+		assertThat(loanDTO.getBook().getTitle()).isEqualTo("Title");
+	}
+
+	@Test
+	@DisplayName("Should walk the loans of a book with a keyset cursor, newest first")
+	void findByBookAfterTest() {
+		Loan first = createAndPersistLoanWithBook(LocalDate.now());
+		Loan second = entityManager.persist(createReturnedLoan(first.getBook(), LocalDate.now()));
+		Loan third = entityManager.persist(createReturnedLoan(first.getBook(), LocalDate.now()));
+		Sort newestFirst = Sort.by(Sort.Direction.DESC, "id");
+
+		CursorPageDTO<LoanDTO> page = repository.findByBookAfter(first.getBook(),
+				Keyset.of("", newestFirst, Collections.singleton("id")), 2);
+		CursorPageDTO<LoanDTO> next = repository.findByBookAfter(first.getBook(),
+				Keyset.of(page.getNext(), newestFirst, Collections.singleton("id")), 2);
+
+		assertThat(page.getContent()).extracting(LoanDTO::getId).containsExactly(third.getId(), second.getId());
+		assertThat(next.getContent()).extracting(LoanDTO::getId).containsExactly(first.getId());
+		assertThat(next.getContent().get(0).getBook().getIsbn()).isEqualTo("123");
+		assertThat(next.getNext()).isNull();
+	}
+
+	@Test
+	@DisplayName("Should change the loans version of a book when one of its loans changes")
+	void findLoansVersionByBookIdTest() {
+		Loan loan = createAndPersistLoanWithBook(LocalDate.now());
+		Long bookId = loan.getBook().getId();
+
+		BookLoansVersionDTO before = repository.findLoansVersionByBookId(bookId).get();
+		loan.setReturned(true);
+		repository.saveAndFlush(loan);
+		BookLoansVersionDTO after = repository.findLoansVersionByBookId(bookId).get();
+
+		assertThat(before.getLoans()).isOne();
+		assertThat(before.getLastLoanId()).isEqualTo(loan.getId());
+		assertThat(after.toETag()).isNotEqualTo(before.toETag());
+		assertThat(repository.findLoansVersionByBookId(bookId + 1000)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should reject a second open loan of the same book")
+	void rejectSecondOpenLoanTest() {
+		Loan loan = createAndPersistLoanWithBook(LocalDate.now());
+
+		Throwable exception = catchThrowable(() -> repository.saveAndFlush(createLoan(loan.getBook(), LocalDate.now())));
+
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class)
+				.hasCauseInstanceOf(ConstraintViolationException.class);
+		assertThat(((ConstraintViolationException) exception.getCause()).getConstraintName())
+				.containsIgnoringCase(Loan.OPEN_BOOK_CONSTRAINT);
+	}
+
+	@Test
+	@DisplayName("Should allow a new loan once the open one is returned")
+	void loanAgainAfterReturnTest() {
+		Loan loan = createAndPersistLoanWithBook(LocalDate.now());
+		loan.setReturned(true);
+		repository.saveAndFlush(loan);
+
+		Loan newLoan = repository.saveAndFlush(createLoan(loan.getBook(), LocalDate.now()));
+
+		assertThat(loan.getOpenBookId()).isNull();
+		assertThat(newLoan.getOpenBookId()).isEqualTo(loan.getBook().getId());
+	}
+
+	@Test
+	@DisplayName("Should return open loans in bulk, bumping their version and leaving returned ones alone")
+	void markReturnedTest() {
+		Loan open = createAndPersistLoanWithBook(LocalDate.now());
+		Loan returned = entityManager.persist(createReturnedLoan(open.getBook(), LocalDate.now()));
+		entityManager.flush();
+		Long openVersion = open.getVersion();
+		Long returnedVersion = returned.getVersion();
+
+		int updated = repository.markReturned(Arrays.asList(open.getId(), returned.getId()));
+
+		Loan openFound = entityManager.find(Loan.class, open.getId());
+		assertThat(updated).isEqualTo(1);
+		assertThat(openFound.getReturned()).isTrue();
+		assertThat(openFound.getOpenBookId()).isNull();
+		assertThat(openFound.getVersion()).isEqualTo(openVersion + 1);
+		assertThat(entityManager.find(Loan.class, returned.getId()).getVersion()).isEqualTo(returnedVersion);
+	}
+
+	@Test
+	@DisplayName("Should resolve loans to return by id and the open loans by ISBN")
+	void findReturnCandidatesTest() {
+		Loan open = createAndPersistLoanWithBook(LocalDate.now());
+		Loan returned = entityManager.persist(createReturnedLoan(open.getBook(), LocalDate.now()));
+
+		List<OpenLoanDTO> byId = repository.findReturnCandidatesById(Arrays.asList(open.getId(), returned.getId()));
+		List<OpenLoanDTO> byIsbn = repository.findOpenByIsbns(Arrays.asList("123", "999"));
+
+		assertThat(byId).extracting(OpenLoanDTO::getId, OpenLoanDTO::getOpenBookId).containsExactlyInAnyOrder(
+				Tuple.tuple(open.getId(), open.getBook().getId()), Tuple.tuple(returned.getId(), null));
+		assertThat(byIsbn).extracting(OpenLoanDTO::getId).containsExactly(open.getId());
+	}
+
+	@Test
+	@DisplayName("Should walk the late loans of an id range in chunks from a checkpoint")
+	void findOverdueInIdRangeTest() {
+		LocalDate dueDate = LocalDate.now().minusDays(4);
+		Loan first = entityManager.persist(createLoan(entityManager.persist(createNewBook("111")), dueDate));
+		entityManager.persist(createLoan(entityManager.persist(createNewBook("222")), LocalDate.now()));
+		Loan last = entityManager.persist(createLoan(entityManager.persist(createNewBook("333")), dueDate.minusDays(1)));
+		entityManager.persist(createReturnedLoan(entityManager.persist(createNewBook("444")), dueDate));
+
+		IdRangeDTO range = repository.findOverdueIdRange(dueDate);
+		List<LoanDTO> firstChunk = repository.findOverdueAfter(range.getFirst() - 1, range.getLast(), dueDate,
+				PageRequest.of(0, 1));
+		List<LoanDTO> secondChunk = repository.findOverdueAfter(first.getId(), range.getLast(), dueDate,
+				PageRequest.of(0, 1));
+
+		assertThat(range).isEqualTo(new IdRangeDTO(first.getId(), last.getId()));
+		assertThat(firstChunk).extracting(LoanDTO::getId).containsExactly(first.getId());
+		assertThat(secondChunk).extracting(LoanDTO::getId).containsExactly(last.getId());
+		assertThat(repository.findOverdueIdRange(dueDate.minusDays(10)).isEmpty()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Should reject a cursor whose sort value does not match the sort property")
+	void findAfterInvalidCursorTest() {
+		// Scenery
+		String token = Base64.getUrlEncoder().withoutPadding()
+				.encodeToString("loanDate\nASC\n1\nVnot-a-date".getBytes(StandardCharsets.UTF_8));
+		Keyset keyset = Keyset.of(token, Sort.unsorted(), Collections.singleton("loanDate"));
+
+		// Execution
+		Throwable exception = catchThrowable(
+				() -> repository.findByBookIsbnOrCustomerAfter(null, null, keyset, 2));
+
+		// Assertion
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Invalid cursor");
+	}
+
 	private Book createNewBook(String isbn) {
 		Book book = Book.builder().title("Title").author("Author").isbn(isbn).build();
 		return book;
@@ -77,6 +312,10 @@ class LoanRepositoryTest {
 		return Loan.builder().book(book).customer("Customer").loanDate(loanDate).returned(false).build();
 	}
 
+	private Loan createReturnedLoan(Book book, LocalDate loanDate) {
+		return Loan.builder().book(book).customer("Customer").loanDate(loanDate).returned(true).build();
+	}
+
 	private Loan createAndPersistLoanWithBook(LocalDate loanDate) {
 		Book book = createNewBook("123");
 		Loan loan = createLoan(book,loanDate);
@@ -0,0 +1,120 @@
+package com.rafaelvastag.api.library.api.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rafaelvastag.api.library.config.DataSourceRoutingConfig;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
+import com.rafaelvastag.api.library.service.impl.ReplicaReadGuardImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = { "application.datasource.replica.enabled=true",
+		"spring.datasource.url=" + ReadWriteRoutingTest.PRIMARY_URL,
+		"application.datasource.replica.urls=" + ReadWriteRoutingTest.REPLICA_URL,
+		"application.datasource.replica.max-lag-ms=60000" })
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ DataSourceRoutingConfig.class, ReplicaReadGuardImpl.class })
+class ReadWriteRoutingTest {
+
+	static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+
+	static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	BookRepository repository;
+
+	@Autowired
+	ReplicaReadGuard replicaReads;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	TransactionTemplate readOnly;
+
+	@TempDir
+	Path schemaDir;
+
+	@BeforeEach
+	void setUp() {
+		JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL, "sa", ""));
+		JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+		String schema = schemaDir.resolve("schema.sql").toString();
+
+		repository.deleteAll();
+		primary.execute("script nodata to '" + schema + "'");
+		replica.execute("drop all objects");
+		replica.execute("runscript from '" + schema + "'");
+		replica.update("insert into book (id, title, author, isbn, version) values (1000, 'Title', 'Author', 'replica', 0)");
+
+		readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+	}
+
+	@Test
+	@DisplayName("Should run the read-only transactions that opt in on the replica and the rest on the primary")
+	void routeReadsTest() {
+		// Scenery
+		repository.save(Book.builder().title("Title").author("Author").isbn("primary").build());
+
+		// Execution
+		List<String> fromReplica = readOnly.execute(status -> {
+			replicaReads.readFromReplica("routing-test");
+			return isbns(repository.findAll());
+		});
+		List<String> readOnlyFromPrimary = readOnly.execute(status -> isbns(repository.findAll()));
+
+		// Assertion
+		assertThat(fromReplica).containsExactly("replica");
+		assertThat(readOnlyFromPrimary).containsExactly("primary");
+		assertThat(isbns(repository.findAll())).containsExactly("primary");
+	}
+
+	@Test
+	@DisplayName("Should keep the reads of a key written within the replica lag on the primary")
+	void recentWriteTest() {
+		// Scenery
+		repository.save(Book.builder().title("Title").author("Author").isbn("primary").build());
+		replicaReads.recordWrites(Collections.singletonList("written"));
+
+		// Execution
+		List<String> afterWrite = readOnly.execute(status -> {
+			replicaReads.readFromReplica("written", "other");
+			return isbns(repository.findAll());
+		});
+
+		// Assertion
+		assertThat(afterWrite).containsExactly("primary");
+	}
+
+	private static List<String> isbns(List<Book> books) {
+		return books.stream().map(Book::getIsbn).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.rafaelvastag.api.library.api.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.rafaelvastag.api.library.config.MetricsConfig;
+import com.rafaelvastag.api.library.config.RepositoryMetricsInterceptor;
+import com.rafaelvastag.api.library.config.SqlStatementCounter;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import({ MetricsConfig.class, SimpleMeterRegistry.class })
+class RepositoryMetricsTest {
+
+	@Autowired
+	BookRepository repository;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Test
+	@DisplayName("Should time repository methods and count the SQL statements they issue")
+	void timeRepositoryInvocationTest() {
+		// Scenery
+		SqlStatementCounter.reset();
+
+		// Execution
+		repository.existsByIsbn("123");
+		repository.existsByIsbn("456");
+
+		// Assertion
+		Timer timer = meterRegistry.get(RepositoryMetricsInterceptor.METRIC_NAME).tag("repository", "BookRepository")
+				.tag("method", "existsByIsbn").tag("exception", "none").timer();
+		assertThat(timer.count()).isEqualTo(2);
+		assertThat(SqlStatementCounter.current()).isEqualTo(2);
+	}
+
+}
@@ -3,6 +3,7 @@ package com.rafaelvastag.api.library.api.resource;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import org.hamcrest.Matchers;
@@ -15,10 +16,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -27,17 +31,27 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.dto.BookBatchDTO;
 import com.rafaelvastag.api.library.dto.BookDTO;
+import com.rafaelvastag.api.library.dto.BookIdsDTO;
+import com.rafaelvastag.api.library.dto.BookLoansVersionDTO;
+import com.rafaelvastag.api.library.dto.BookPatchDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
 import com.rafaelvastag.api.library.exception.BusinessException;
+import com.rafaelvastag.api.library.mapper.BookMapperImpl;
+import com.rafaelvastag.api.library.mapper.LoanMapperImpl;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.resource.BookController;
 import com.rafaelvastag.api.library.service.BookService;
+import com.rafaelvastag.api.library.service.ExportService;
 import com.rafaelvastag.api.library.service.LoanService;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @WebMvcTest(controllers = BookController.class)
 @AutoConfigureMockMvc
+@Import({ BookMapperImpl.class, LoanMapperImpl.class })
 class BookControllerTest {
 
 	static String BOOK_API = "/api/books";
@@ -51,6 +65,9 @@ class BookControllerTest {
 	@MockBean
 	LoanService loanService;
 
+	@MockBean
+	ExportService exportService;
+
 	@Test
 	@DisplayName("Should return status resource not found when no book exists with that id")
 	void bookNotFoundTest() throws Exception {
@@ -75,6 +92,7 @@ class BookControllerTest {
 		Book book = Book.builder().id(id).title(createNewBook().getTitle()).author(createNewBook().getAuthor())
 				.isbn(createNewBook().getIsbn()).build();
 
+		BDDMockito.given(service.findVersionById(id)).willReturn(Optional.of(3L));
 		BDDMockito.given(service.findById(id)).willReturn(Optional.of(book));
 
 		// Execution
@@ -83,11 +101,80 @@ class BookControllerTest {
 
 		// Assertion
 		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isOk()).andExpect(jsonPath("id").value(id))
+				.andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""))
 				.andExpect(jsonPath("title").value(createNewBook().getTitle()))
 				.andExpect(jsonPath("author").value(createNewBook().getAuthor()))
 				.andExpect(jsonPath("isbn").value(createNewBook().getIsbn()));
 	}
 
+	@Test
+	@DisplayName("Should answer 304 without loading the book when its ETag still matches")
+	void getBookNotModifiedTest() throws Exception {
+
+		// Scenery
+		Long id = 11L;
+		BDDMockito.given(service.findVersionById(id)).willReturn(Optional.of(3L));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/" + id))
+				.header(HttpHeaders.IF_NONE_MATCH, "\"3\"").accept(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isNotModified())
+				.andExpect(MockMvcResultMatchers.content().string(""));
+		Mockito.verify(service, Mockito.never()).findById(id);
+	}
+
+	@Test
+	@DisplayName("Should answer 304 for the loans of a book when none of them changed")
+	void loansByBookNotModifiedTest() throws Exception {
+
+		// Scenery
+		Long id = 11L;
+		BookLoansVersionDTO version = new BookLoansVersionDTO(0L, 2L, 20L, 1L);
+		BDDMockito.given(loanService.getLoansVersionByBook(id)).willReturn(Optional.of(version));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/" + id + "/loans"))
+				.header(HttpHeaders.IF_NONE_MATCH, version.toETag()).accept(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isNotModified());
+		Mockito.verify(loanService, Mockito.never()).getLoansByBook(Mockito.any(Book.class), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Should split the requested book ids into available and loaned ones")
+	void availabilityTest() throws Exception {
+
+		// Scenery
+		String json = new ObjectMapper().writeValueAsString(BookIdsDTO.builder().ids(Arrays.asList(1L, 2L, 3L)).build());
+		BDDMockito.given(loanService.checkAvailability(Arrays.asList(1L, 2L, 3L)))
+				.willReturn(new BookAvailabilityDTO(Arrays.asList(1L, 3L), Arrays.asList(2L)));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(BOOK_API.concat("/availability"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(jsonPath("available", Matchers.contains(1, 3)))
+				.andExpect(jsonPath("loaned", Matchers.contains(2)));
+	}
+
+	@Test
+	@DisplayName("Should stream the books export as NDJSON by default")
+	void exportBooksTest() throws Exception {
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/export"));
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.content().contentType("application/x-ndjson;charset=UTF-8"));
+		Mockito.verify(exportService).exportBooks(Mockito.eq(ExportService.Format.NDJSON), Mockito.any());
+	}
+
 	@Test
 	@DisplayName("Should create a book")
 	void createBookTest() throws Exception {
@@ -111,6 +198,51 @@ class BookControllerTest {
 
 	}
 
+	@Test
+	@DisplayName("Should create a batch of books")
+	void createBookBatchTest() throws Exception {
+
+		// Scenery
+		BookBatchDTO batch = BookBatchDTO.builder().books(Arrays.asList(createNewBook(),
+				BookDTO.builder().author("Author").title("other book").isbn("654321").build())).build();
+		String json = new ObjectMapper().writeValueAsString(batch);
+
+		BDDMockito.given(service.saveAll(Mockito.anyList())).willAnswer(invocation -> {
+			List<Book> books = invocation.getArgument(0);
+			for (int i = 0; i < books.size(); i++) {
+				books.get(i).setId(i + 1L);
+			}
+			return books;
+		});
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isCreated())
+				.andExpect(jsonPath("$", Matchers.hasSize(2)))
+				.andExpect(jsonPath("$[0].id").value(1))
+				.andExpect(jsonPath("$[1].isbn").value("654321"));
+	}
+
+	@Test
+	@DisplayName("Should reject the whole batch when one of the books is invalid")
+	void createInvalidBookBatchTest() throws Exception {
+
+		// Scenery
+		BookBatchDTO batch = BookBatchDTO.builder().books(Arrays.asList(createNewBook(), new BookDTO())).build();
+		String json = new ObjectMapper().writeValueAsString(batch);
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isBadRequest());
+		Mockito.verify(service, Mockito.never()).saveAll(Mockito.anyList());
+	}
+
 	@Test
 	@DisplayName("Should throw validate error when haven't datas to create a book")
 	void createInvalidBookTest() throws Exception {
@@ -204,6 +336,83 @@ class BookControllerTest {
 
 	}
 
+	@Test
+	@DisplayName("Should answer a conflict when the book is changed concurrently while updating it")
+	void updateBookConcurrentlyTest() throws Exception {
+
+		// Scenery
+		Long id = 11L;
+		String json = new ObjectMapper().writeValueAsString(createNewBook());
+		Book updatingBook = createNewEntityBook(id);
+
+		BDDMockito.given(service.findById(id)).willReturn(Optional.of(updatingBook));
+		BDDMockito.given(service.update(updatingBook))
+				.willThrow(new ObjectOptimisticLockingFailureException(Book.class, id));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.put(BOOK_API.concat("/" + id)).content(json)
+				.accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isConflict())
+				.andExpect(jsonPath("errors[0]").value("Book changed concurrently"));
+
+	}
+
+	@Test
+	@DisplayName("Should patch the given fields of a book at the If-Match version and answer the new ETag")
+	void patchBook() throws Exception {
+
+		// Scenery
+		String json = new ObjectMapper().writeValueAsString(BookPatchDTO.builder().title("newTitle").build());
+		Book patchedBook = createNewEntityBook(11L);
+		patchedBook.setVersion(4L);
+
+		BDDMockito.given(service.patch(Mockito.eq(11L), Mockito.eq(3L), Mockito.any(Book.class)))
+				.willReturn(Optional.of(patchedBook));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.patch(BOOK_API.concat("/11")).content(json)
+				.header(HttpHeaders.IF_MATCH, "\"3\"").accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"4\""))
+				.andExpect(jsonPath("title").value("newTitle"));
+		Mockito.verify(service).patch(Mockito.eq(11L), Mockito.eq(3L),
+				Mockito.argThat(changes -> "newTitle".equals(changes.getTitle()) && changes.getAuthor() == null));
+		Mockito.verify(service, Mockito.never()).findById(Mockito.anyLong());
+
+	}
+
+	@Test
+	@DisplayName("Should refuse a book patch without If-Match or at a stale version")
+	void patchBookPreconditions() throws Exception {
+
+		// Scenery
+		String json = new ObjectMapper().writeValueAsString(BookPatchDTO.builder().author("newAuthor").build());
+
+		BDDMockito.given(service.patch(Mockito.eq(11L), Mockito.eq(2L), Mockito.any(Book.class)))
+				.willThrow(new ObjectOptimisticLockingFailureException(Book.class, 11L));
+
+		// Execution
+		MockHttpServletRequestBuilder withoutIfMatch = MockMvcRequestBuilders.patch(BOOK_API.concat("/11"))
+				.content(json).accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON);
+		MockHttpServletRequestBuilder stale = MockMvcRequestBuilders.patch(BOOK_API.concat("/11")).content(json)
+				.header(HttpHeaders.IF_MATCH, "\"2\"").accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON);
+		MockHttpServletRequestBuilder empty = MockMvcRequestBuilders.patch(BOOK_API.concat("/11")).content("{}")
+				.header(HttpHeaders.IF_MATCH, "\"2\"").accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(withoutIfMatch).andExpect(MockMvcResultMatchers.status().isPreconditionRequired());
+		mvc.perform(stale).andExpect(MockMvcResultMatchers.status().isPreconditionFailed());
+		mvc.perform(empty).andExpect(MockMvcResultMatchers.status().isBadRequest());
+
+	}
+
 	@Test
 	@DisplayName("Should throws not found exception when trying to update a non-existing book")
 	void updateNotExistingBook() throws Exception {
@@ -246,6 +455,26 @@ class BookControllerTest {
 				.andExpect(jsonPath("pageable.pageNumber").value(0));
 	}
 
+	@Test
+	@DisplayName("Should find books from a cursor without total count")
+	void findBooksWithCursorTest() throws Exception {
+
+		// Scenery
+		Book book = createNewEntityBook(11L);
+		BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.eq(""), Mockito.any(Pageable.class)))
+				.willReturn(new CursorPageDTO<>(Arrays.asList(book), 1, "next-token"));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("?after=&size=1"))
+				.accept(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(jsonPath("content", Matchers.hasSize(1))).andExpect(jsonPath("content[0].id").value(11L))
+				.andExpect(jsonPath("next").value("next-token"))
+				.andExpect(jsonPath("totalElements").doesNotExist());
+	}
+
 	private BookDTO createNewBook() {
 		BookDTO book = BookDTO.builder().author("Author").title("my book").isbn("123456").build();
 		return book;
@@ -0,0 +1,65 @@
+package com.rafaelvastag.api.library.api.resource;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.resource.CustomerController;
+import com.rafaelvastag.api.library.service.LoanService;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@WebMvcTest(controllers = CustomerController.class)
+@AutoConfigureMockMvc
+class CustomerControllerTest {
+
+	static final String CUSTOMER_API = "/api/customers";
+
+	@Autowired
+	MockMvc mvc;
+
+	@MockBean
+	private LoanService loanService;
+
+	@Test
+	@DisplayName("Should list the loans of a customer")
+	void customerLoansTest() throws Exception {
+		// Scenery
+		LoanDTO loan = new LoanDTO(1L, "123", "Customer Name", "customer@email.com", 11L, "Title", "Author");
+
+		BDDMockito.given(loanService.getLoansByCustomer(Mockito.eq("Customer Name"), Mockito.any(Pageable.class)))
+				.willReturn(new PageImpl<>(Arrays.asList(loan), PageRequest.of(0, 10), 1L));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(CUSTOMER_API + "/{name}/loans?page=0&size=10", "Customer Name").accept(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(request).andExpect(status().isOk()).andExpect(jsonPath("content", Matchers.hasSize(1)))
+				.andExpect(jsonPath("content[0].book.title").value("Title"))
+				.andExpect(jsonPath("totalElements").value(1));
+	}
+
+}
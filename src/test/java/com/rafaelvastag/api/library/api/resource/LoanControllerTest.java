@@ -5,6 +5,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.Writer;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Optional;
@@ -19,10 +20,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -33,18 +36,24 @@ import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rafaelvastag.api.library.dto.LoanDTO;
 import com.rafaelvastag.api.library.dto.LoanFilterDTO;
+import com.rafaelvastag.api.library.dto.LoanReturnsDTO;
+import com.rafaelvastag.api.library.dto.LoanReturnsResultDTO;
 import com.rafaelvastag.api.library.dto.ReturnedLoanDTO;
 import com.rafaelvastag.api.library.exception.BusinessException;
+import com.rafaelvastag.api.library.mapper.BookMapperImpl;
+import com.rafaelvastag.api.library.mapper.LoanMapperImpl;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.entity.Loan;
 import com.rafaelvastag.api.library.resource.LoanController;
 import com.rafaelvastag.api.library.service.BookService;
+import com.rafaelvastag.api.library.service.ExportService;
 import com.rafaelvastag.api.library.service.LoanService;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @WebMvcTest(controllers = LoanController.class)
 @AutoConfigureMockMvc
+@Import({ BookMapperImpl.class, LoanMapperImpl.class })
 class LoanControllerTest {
 
 	static final String LOAN_API = "/api/loans";
@@ -55,6 +64,9 @@ class LoanControllerTest {
 	@MockBean
 	private BookService bookService;
 
+	@MockBean
+	private ExportService exportService;
+
 	@MockBean
 	private LoanService loanService;
 
@@ -165,19 +177,79 @@ class LoanControllerTest {
 
 	}
 
+	@Test
+	@DisplayName("Should return loans in bulk")
+	void returnLoansTest() throws Exception {
+
+		// Scenery
+		LoanReturnsDTO returns = LoanReturnsDTO.builder().loanIds(Arrays.asList(1L, 2L))
+				.isbns(Arrays.asList("123")).build();
+		String json = new ObjectMapper().writeValueAsString(returns);
+		LoanReturnsResultDTO result = LoanReturnsResultDTO.builder().returned(Arrays.asList(1L, 5L))
+				.alreadyReturned(Arrays.asList()).notFound(Arrays.asList(2L)).isbnsNotLoaned(Arrays.asList()).build();
+
+		BDDMockito.given(loanService.returnLoans(Arrays.asList(1L, 2L), Arrays.asList("123"))).willReturn(result);
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.patch(LOAN_API.concat("/returns"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		// Assertion
+		mvc.perform(request).andExpect(status().isOk())
+				.andExpect(jsonPath("returned", Matchers.contains(1, 5)))
+				.andExpect(jsonPath("notFound", Matchers.contains(2)));
+		verify(loanService, Mockito.never()).updateLoan(Mockito.any(Loan.class));
+
+	}
+
+	@Test
+	@DisplayName("Should answer a conflict when a loan is returned concurrently during a bulk return")
+	void returnLoansConcurrentlyTest() throws Exception {
+
+		// Scenery
+		String json = new ObjectMapper().writeValueAsString(LoanReturnsDTO.builder().loanIds(Arrays.asList(1L)).build());
+
+		BDDMockito.given(loanService.returnLoans(Arrays.asList(1L), null))
+				.willThrow(new ObjectOptimisticLockingFailureException(Loan.class, Arrays.asList(1L)));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.patch(LOAN_API.concat("/returns"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		// Assertion
+		mvc.perform(request).andExpect(status().isConflict())
+				.andExpect(jsonPath("errors[0]").value("Changed concurrently, try again"));
+
+	}
+
+	@Test
+	@DisplayName("Should reject a bulk return without loan ids or ISBNs")
+	void returnLoansWithoutLoansTest() throws Exception {
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.patch(LOAN_API.concat("/returns"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content("{}");
+
+		// Assertion
+		mvc.perform(request).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("errors[0]").value("Loan ids or ISBNs required"));
+		verify(loanService, Mockito.never()).returnLoans(Mockito.any(), Mockito.any());
+
+	}
+
 	@Test
 	@DisplayName("Should find loans")
 	@SuppressWarnings("unchecked")
 	void findLoansByProperties() throws Exception {
 
 		// Scenery
-		Loan loan = createLoan(createNewEntityBook(1L));
+		LoanDTO loan = LoanDTO.builder().id(1L).customerName("Customer Name").isbn("123456").build();
 
 		BDDMockito.given(loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)))
 				.willReturn(new PageImpl(Arrays.asList(loan), PageRequest.of(0, 10), 1L));
 
-		String queryString = String.format("?isbn=%s&customerName=%s&page=0&size=10", loan.getBook().getIsbn(),
-				loan.getCustomer());
+		String queryString = String.format("?isbn=%s&customerName=%s&page=0&size=10", loan.getIsbn(),
+				loan.getCustomerName());
 
 		// Execution
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(LOAN_API.concat(queryString))
@@ -189,6 +261,26 @@ class LoanControllerTest {
 				.andExpect(jsonPath("pageable.pageSize").value(10)).andExpect(jsonPath("pageable.pageNumber").value(0));
 	}
 
+	@Test
+	@DisplayName("Should list the overdue loans")
+	void findOverdueLoansTest() throws Exception {
+
+		// Scenery
+		LoanDTO loan = LoanDTO.builder().id(1L).customerName("Customer Name").isbn("123456").build();
+
+		BDDMockito.given(loanService.findOverdue(Mockito.any(Pageable.class)))
+				.willReturn(new PageImpl<>(Arrays.asList(loan), PageRequest.of(0, 10), 1L));
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(LOAN_API.concat("/overdue?page=0&size=10"))
+				.accept(MediaType.APPLICATION_JSON);
+
+		// Assertion
+		mvc.perform(request).andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(jsonPath("content", Matchers.hasSize(1))).andExpect(jsonPath("content[0].id").value(1))
+				.andExpect(jsonPath("totalElements").value(1));
+	}
+
 	private Loan createLoan(Book book) {
 		return Loan.builder().id(1L).customer("Customer Name").emailCustomer("customer@email.com").book(book)
 				.loanDate(LocalDate.now()).build();
@@ -209,4 +301,33 @@ class LoanControllerTest {
 
 	// Assertion
 
+	@Test
+	@DisplayName("Should stream the loans export in the requested format")
+	void exportLoansTest() throws Exception {
+		// Scenery
+		BDDMockito.willAnswer(invocation -> {
+			invocation.<Writer>getArgument(1).write("id,isbn\r\n1,123\r\n");
+			return null;
+		}).given(exportService).exportLoans(Mockito.eq(ExportService.Format.CSV), Mockito.any());
+
+		// Execution
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(LOAN_API.concat("/export?format=csv"));
+
+		// Assertion
+		mvc.perform(request).andExpect(status().isOk())
+				.andExpect(content().contentType("text/csv;charset=UTF-8"))
+				.andExpect(MockMvcResultMatchers.header().string("Content-Disposition",
+						"attachment; filename=\"loans.csv\""))
+				.andExpect(content().string("id,isbn\r\n1,123\r\n"));
+	}
+
+	@Test
+	@DisplayName("Should reject an unknown export format")
+	void exportUnknownFormatTest() throws Exception {
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(LOAN_API.concat("/export?format=xml"));
+
+		mvc.perform(request).andExpect(status().isBadRequest());
+		Mockito.verifyNoInteractions(exportService);
+	}
+
 }
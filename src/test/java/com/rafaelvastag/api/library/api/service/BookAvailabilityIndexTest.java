@@ -0,0 +1,108 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.dto.BookAvailabilityDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.impl.BookAvailabilityIndexImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class BookAvailabilityIndexTest {
+
+	@MockBean
+	LoanRepository repository;
+
+	BookAvailabilityIndexImpl index;
+
+	@BeforeEach
+	void setUp() {
+		this.index = new BookAvailabilityIndexImpl(repository);
+	}
+
+	@Test
+	@DisplayName("Should rebuild from the open loans and split the requested ids")
+	void rebuildAndCheckTest() {
+		// Scenery
+		Mockito.when(repository.streamLoanedBookIds()).thenReturn(Stream.of(2L, 5L, 5_000_000_000L));
+
+		// Execution
+		index.rebuild();
+		BookAvailabilityDTO availability = index.check(Arrays.asList(1L, 2L, 3L, 5L, 5_000_000_000L));
+
+		// Assertion
+		assertThat(availability.getLoaned()).containsExactly(2L, 5L, 5_000_000_000L);
+		assertThat(availability.getAvailable()).containsExactly(1L, 3L);
+	}
+
+	@Test
+	@DisplayName("Should pick up the books loaned and returned on other instances when refreshed")
+	void refreshFromDatabaseTest() {
+		// Scenery
+		index.update(Loan.builder().id(1L).book(Book.builder().id(7L).build()).loanDate(LocalDate.now()).build());
+		Mockito.when(repository.streamLoanedBookIds()).thenReturn(Stream.of(8L));
+
+		// Execution
+		index.refresh();
+		BookAvailabilityDTO availability = index.check(Arrays.asList(7L, 8L));
+
+		// Assertion
+		assertThat(availability.getAvailable()).containsExactly(7L);
+		assertThat(availability.getLoaned()).containsExactly(8L);
+	}
+
+	@Test
+	@DisplayName("Should free a book once its loan is returned")
+	void returnedLoanTest() {
+		// Scenery
+		Loan loan = Loan.builder().id(1L).book(Book.builder().id(7L).build()).loanDate(LocalDate.now()).build();
+		index.update(loan);
+		assertThat(index.check(Arrays.asList(7L)).getLoaned()).containsExactly(7L);
+
+		// Execution
+		loan.setReturned(true);
+		index.update(loan);
+
+		// Assertion
+		assertThat(index.check(Arrays.asList(7L)).getAvailable()).containsExactly(7L);
+	}
+
+	@Test
+	@DisplayName("Should only mark a book loaned once the loan's transaction commits")
+	void updateAfterCommitTest() {
+		// Scenery
+		Loan loan = Loan.builder().id(1L).book(Book.builder().id(7L).build()).loanDate(LocalDate.now()).build();
+		TransactionSynchronizationManager.initSynchronization();
+
+		try {
+			// Execution
+			index.update(loan);
+			BookAvailabilityDTO beforeCommit = index.check(Arrays.asList(7L));
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+			// Assertion
+			assertThat(beforeCommit.getAvailable()).containsExactly(7L);
+			assertThat(index.check(Arrays.asList(7L)).getLoaned()).containsExactly(7L);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.dto.BookVersionDTO;
+import com.rafaelvastag.api.library.dto.CursorPageDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.model.repository.Keyset;
+import com.rafaelvastag.api.library.service.impl.BookSearchIndexImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class BookSearchIndexTest {
+
+	@MockBean
+	BookRepository repository;
+
+	BookSearchIndexImpl index;
+
+	@BeforeEach
+	void setUp() {
+		Mockito.when(repository.findAfter(Mockito.<Example<Book>>any(), Mockito.any(Keyset.class), Mockito.anyInt()))
+				.thenReturn(new CursorPageDTO<>(Arrays.asList(createBook(1L, "The Lord of the Rings", "Tolkien", "111"),
+						createBook(2L, "Rings", "Someone", "222"), createBook(3L, "Lords and Ladies", "Pratchett", "333")),
+						1000, null));
+
+		this.index = new BookSearchIndexImpl(repository);
+		this.index.rebuild();
+	}
+
+	@Test
+	@DisplayName("Should find books containing the term ignoring case, best matches first")
+	void searchRankedTest() {
+		// Scenery
+		Book filter = Book.builder().title("RING").build();
+
+		// Execution
+		Page<Long> result = index.search(filter, PageRequest.of(0, 10));
+
+		// Assertion
+		assertThat(result.getTotalElements()).isEqualTo(2);
+		assertThat(result.getContent()).containsExactly(2L, 1L);
+	}
+
+	@Test
+	@DisplayName("Should combine the filter fields and page the ranked results")
+	void searchCombinedFieldsAndPageTest() {
+		// Scenery
+		Book byTitleAndAuthor = Book.builder().title("lord").author("kien").build();
+		Book byTitle = Book.builder().title("lord").build();
+
+		// Execution
+		Page<Long> combined = index.search(byTitleAndAuthor, PageRequest.of(0, 10));
+		Page<Long> secondPage = index.search(byTitle, PageRequest.of(1, 1));
+
+		// Assertion
+		assertThat(combined.getContent()).containsExactly(1L);
+		assertThat(secondPage.getTotalElements()).isEqualTo(2);
+		assertThat(secondPage.getContent()).containsExactly(1L);
+	}
+
+	@Test
+	@DisplayName("Should keep the index up to date when books are updated and removed")
+	void updateAndRemoveTest() {
+		// Scenery
+		Book updated = createBook(2L, "Dune", "Herbert", "222");
+
+		// Execution
+		index.index(updated);
+		index.remove(createBook(3L, null, null, null));
+
+		// Assertion
+		assertThat(index.search(Book.builder().title("ring").build(), PageRequest.of(0, 10)).getContent())
+				.containsExactly(1L);
+		assertThat(index.search(Book.builder().title("dun").build(), PageRequest.of(0, 10)).getContent())
+				.containsExactly(2L);
+		assertThat(index.search(Book.builder().title("lord").build(), PageRequest.of(0, 10)).getContent())
+				.containsExactly(1L);
+	}
+
+	@Test
+	@DisplayName("Should pick up books added, changed and deleted by other instances")
+	void refreshFromDatabaseTest() {
+		// Scenery
+		Mockito.when(repository.findVersionsAfter(Mockito.anyLong(), Mockito.any(Pageable.class)))
+				.thenReturn(Arrays.asList(new BookVersionDTO(1L, null), new BookVersionDTO(2L, 1L),
+						new BookVersionDTO(4L, 0L)));
+		Mockito.when(repository.findAllById(Arrays.asList(2L, 4L))).thenReturn(Arrays.asList(
+				createBook(2L, "Dune", "Herbert", "222"), createBook(4L, "Ringworld", "Niven", "444")));
+
+		// Execution
+		index.refresh();
+
+		// Assertion
+		assertThat(index.search(Book.builder().title("ring").build(), PageRequest.of(0, 10)).getContent())
+				.containsExactly(4L, 1L);
+		assertThat(index.search(Book.builder().title("dune").build(), PageRequest.of(0, 10)).getContent())
+				.containsExactly(2L);
+		assertThat(index.search(Book.builder().title("lords").build(), PageRequest.of(0, 10)).getContent())
+				.isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should only apply a write made in a transaction once it commits")
+	void indexAfterCommitTest() {
+		// Scenery
+		Book filter = Book.builder().title("dune").build();
+		TransactionSynchronizationManager.initSynchronization();
+
+		try {
+			// Execution
+			index.index(createBook(4L, "Dune", "Herbert", "444"));
+			long beforeCommit = index.search(filter, PageRequest.of(0, 10)).getTotalElements();
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+			// Assertion
+			assertThat(beforeCommit).isZero();
+			assertThat(index.search(filter, PageRequest.of(0, 10)).getContent()).containsExactly(4L);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	@DisplayName("Should leave short terms and sorted pages to the database")
+	void supportsTest() {
+		assertThat(index.supports(Book.builder().title("lord").build(), PageRequest.of(0, 10))).isTrue();
+		assertThat(index.supports(Book.builder().title("lo").build(), PageRequest.of(0, 10))).isFalse();
+		assertThat(index.supports(Book.builder().title("lord").build(), PageRequest.of(0, 10, Sort.by("title"))))
+				.isFalse();
+		assertThat(index.supports(new Book(), PageRequest.of(0, 10))).isFalse();
+	}
+
+	private Book createBook(Long id, String title, String author, String isbn) {
+		return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+	}
+
+}
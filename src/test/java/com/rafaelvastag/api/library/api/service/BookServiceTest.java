@@ -3,28 +3,41 @@ package com.rafaelvastag.api.library.api.service;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.rafaelvastag.api.library.exception.BusinessException;
 import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.RecordCount;
 import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.service.BookSearchIndex;
 import com.rafaelvastag.api.library.service.BookService;
+import com.rafaelvastag.api.library.service.CustomerLoanReadModel;
+import com.rafaelvastag.api.library.service.RecordCountService;
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
 import com.rafaelvastag.api.library.service.impl.BookServiceImpl;
 
 @ExtendWith(SpringExtension.class)
@@ -36,9 +49,22 @@ class BookServiceTest {
 	@MockBean
 	BookRepository repository;
 
+	@MockBean
+	BookSearchIndex searchIndex;
+
+	@MockBean
+	RecordCountService recordCounts;
+
+	@MockBean
+	CustomerLoanReadModel customerLoans;
+
+	@MockBean
+	ReplicaReadGuard replicaReads;
+
 	@BeforeEach
 	public void setUp() {
-		this.service = new BookServiceImpl(repository);
+		this.service = new BookServiceImpl(repository, Caffeine.newBuilder().maximumSize(100).build(), searchIndex,
+				recordCounts, customerLoans, replicaReads);
 	}
 
 	@Test
@@ -50,7 +76,7 @@ class BookServiceTest {
 
 		Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
 
-		Mockito.when(repository.save(book)).thenReturn(
+		Mockito.when(repository.saveAndFlush(book)).thenReturn(
 				Book.builder().id(11L).author(book.getAuthor()).title(book.getTitle()).isbn(book.getIsbn()).build());
 
 		// Execution
@@ -78,8 +104,79 @@ class BookServiceTest {
 		// Assertion
 		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("ISBN exists.");
 
-		Mockito.verify(repository, Mockito.never()).save(book);
+		Mockito.verify(repository, Mockito.never()).saveAndFlush(book);
+
+	}
+
+	@Test
+	@DisplayName("Should report a duplicated ISBN rejected by the unique constraint")
+	void shouldNotSaveBookWithConcurrentDuplicatedIsbn() {
+
+		// Scenery
+		Book book = createNewBook();
+
+		Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+		Mockito.when(repository.saveAndFlush(book)).thenThrow(new DataIntegrityViolationException("duplicate",
+				new ConstraintViolationException("duplicate", null, "PUBLIC.UK_BOOK_ISBN_INDEX_1")));
+
+		// Execution
+		Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+
+		// Assertion
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("ISBN exists.");
+		Mockito.verify(recordCounts, Mockito.never()).add(RecordCount.BOOKS, 1);
+
+	}
+
+	@Test
+	@DisplayName("Should persist a batch of books after checking the ISBNs in a single query")
+	void saveAllBooksTest() {
+
+		// Scenery
+		List<Book> books = Arrays.asList(createNewBook(), Book.builder().title("Other").isbn("2222").author("Rick").build());
+
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Collections.emptyList());
+		Mockito.when(repository.insertAll(books)).thenReturn(books);
+
+		// Execution
+		List<Book> savedBooks = service.saveAll(books);
 
+		// Assertion
+		assertThat(savedBooks).hasSize(2);
+		Mockito.verify(repository, Mockito.times(1)).findExistingIsbns(Mockito.anyCollection());
+		Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+	}
+
+	@Test
+	@DisplayName("Shouldn't save a batch that repeats an ISBN")
+	void shouldNotSaveBatchWithRepeatedIsbn() {
+
+		// Scenery
+		List<Book> books = Arrays.asList(createNewBook(), createNewBook());
+
+		// Execution
+		Throwable exception = Assertions.catchThrowable(() -> service.saveAll(books));
+
+		// Assertion
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("ISBN repeated in batch: 1111");
+		Mockito.verify(repository, Mockito.never()).insertAll(Mockito.anyList());
+	}
+
+	@Test
+	@DisplayName("Shouldn't save a batch when one of the ISBNs is already registered")
+	void shouldNotSaveBatchWithExistingIsbn() {
+
+		// Scenery
+		List<Book> books = Arrays.asList(createNewBook());
+
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Arrays.asList("1111"));
+
+		// Execution
+		Throwable exception = Assertions.catchThrowable(() -> service.saveAll(books));
+
+		// Assertion
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("ISBN exists: 1111");
+		Mockito.verify(repository, Mockito.never()).insertAll(Mockito.anyList());
 	}
 
 	@Test
@@ -144,6 +241,47 @@ class BookServiceTest {
 		Mockito.verify(repository, Mockito.never()).delete(book);
 	}
 
+	@Test
+	@DisplayName("Should patch a book with one conditional update and refresh what depends on it")
+	void patchBook() {
+		// Scenery
+		Book changes = Book.builder().title("New title").build();
+		Book patchedBook = Book.builder().id(11L).title("New title").author("Rick").isbn("1111").version(4L).build();
+
+		Mockito.when(repository.patch(11L, 3L, "New title", null)).thenReturn(1);
+		Mockito.when(repository.findById(11L)).thenReturn(Optional.of(patchedBook));
+
+		// Execution
+		Optional<Book> result = service.patch(11L, 3L, changes);
+
+		// Assertion
+		assertThat(result).contains(patchedBook);
+		Mockito.verify(repository, Mockito.never()).save(Mockito.any(Book.class));
+		Mockito.verify(customerLoans).updateBook(patchedBook);
+		Mockito.verify(searchIndex).index(patchedBook);
+	}
+
+	@Test
+	@DisplayName("Should not patch a missing book or one at another version")
+	void patchMissingOrChangedBook() {
+		// Scenery
+		Book changes = Book.builder().author("New author").build();
+
+		Mockito.when(repository.patch(Mockito.anyLong(), Mockito.anyLong(), Mockito.any(), Mockito.any()))
+				.thenReturn(0);
+		Mockito.when(repository.findVersionById(11L)).thenReturn(Optional.of(5L));
+		Mockito.when(repository.findVersionById(12L)).thenReturn(Optional.empty());
+
+		// Execution
+		Throwable exception = Assertions.catchThrowable(() -> service.patch(11L, 3L, changes));
+		Optional<Book> missing = service.patch(12L, 3L, changes);
+
+		// Assertion
+		assertThat(exception).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+		assertThat(missing).isEmpty();
+		Mockito.verify(searchIndex, Mockito.never()).index(Mockito.any(Book.class));
+	}
+
 	@Test
 	@DisplayName("Should update a book existent")
 	void updateBook() {
@@ -203,6 +341,69 @@ class BookServiceTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Should page the whole catalog with the maintained book counter")
+	void findAllBooksFromCounterTest() {
+		// Scenery
+		Book book = createNewBook();
+		PageRequest pageRequest = PageRequest.of(0, 1);
+
+		Mockito.when(repository.findAllBy(pageRequest)).thenReturn(Arrays.asList(book));
+		Mockito.when(recordCounts.get(RecordCount.BOOKS)).thenReturn(42L);
+
+		// Execution
+		Page<Book> result = service.find(new Book(), pageRequest);
+
+		// Assertion
+		assertThat(result.getTotalElements()).isEqualTo(42);
+		assertThat(result.getContent()).containsExactly(book);
+		Mockito.verify(repository, Mockito.never()).findAll(Mockito.<Example<Book>>any(), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Should only look one row ahead when approximate filter counts are enabled")
+	void findBookApproximateCountTest() {
+		// Scenery
+		ReflectionTestUtils.setField(service, "approximateFilterCounts", true);
+		Book filter = Book.builder().author("Fulano").build();
+		PageRequest pageRequest = PageRequest.of(1, 2);
+
+		Mockito.when(repository.findContent(Mockito.<Example<Book>>any(), Mockito.eq(pageRequest), Mockito.eq(3)))
+				.thenReturn(Arrays.asList(createNewBook(), createNewBook(), createNewBook()));
+
+		// Execution
+		Page<Book> result = service.find(filter, pageRequest);
+
+		// Assertion
+		assertThat(result.getContent()).hasSize(2);
+		assertThat(result.getTotalElements()).isEqualTo(5);
+		assertThat(result.hasNext()).isTrue();
+		Mockito.verify(repository, Mockito.never()).findAll(Mockito.<Example<Book>>any(), Mockito.any(Pageable.class));
+	}
+
+	@Test
+	@DisplayName("Should answer text filters from the search index in relevance order")
+	void findBookFromSearchIndexTest() {
+		// Scenery
+		Book filter = Book.builder().title("tit").build();
+		Book first = Book.builder().id(2L).title("Title").build();
+		Book second = Book.builder().id(1L).title("Subtitle").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+
+		Mockito.when(searchIndex.supports(filter, pageRequest)).thenReturn(true);
+		Mockito.when(searchIndex.search(filter, pageRequest))
+				.thenReturn(new PageImpl<>(Arrays.asList(2L, 1L), pageRequest, 2L));
+		Mockito.when(repository.findAllById(Arrays.asList(2L, 1L))).thenReturn(Arrays.asList(second, first));
+
+		// Execution
+		Page<Book> result = service.find(filter, pageRequest);
+
+		// Assertion
+		assertThat(result.getTotalElements()).isEqualTo(2);
+		assertThat(result.getContent()).containsExactly(first, second);
+		Mockito.verify(repository, Mockito.never()).findAll(Mockito.<Example<Book>>any(), Mockito.any(Pageable.class));
+	}
+
 	@Test
 	@DisplayName("Should return a book found by ISBN")
 	void findBookByIsbnTest() {
@@ -215,6 +416,69 @@ class BookServiceTest {
 		assertThat(bookFound.get().getIsbn()).isEqualTo(book.getIsbn());
 	}
 	
+	@Test
+	@DisplayName("Should serve repeated ISBN lookups from the cache")
+	void findBookByIsbnCachedTest() {
+		Book book = createNewBook();
+		Mockito.when(repository.findByIsbn(book.getIsbn())).thenReturn(Optional.of(book));
+
+		service.findBookByIsbn(book.getIsbn());
+		Optional<Book> bookFound = service.findBookByIsbn(book.getIsbn());
+
+		assertThat(bookFound.isPresent()).isTrue();
+		Mockito.verify(repository, Mockito.times(1)).findByIsbn(book.getIsbn());
+	}
+
+	@Test
+	@DisplayName("Should reject a duplicated ISBN already known by the cache without querying")
+	void shouldNotSaveBookWithCachedIsbn() {
+		Book book = createNewBook();
+		Mockito.when(repository.findByIsbn(book.getIsbn())).thenReturn(Optional.of(book));
+		service.findBookByIsbn(book.getIsbn());
+
+		Throwable exception = Assertions.catchThrowable(() -> service.save(createNewBook()));
+
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("ISBN exists.");
+		Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+	}
+
+	@Test
+	@DisplayName("Should evict the cached ISBN when a book is updated or deleted")
+	void evictCachedIsbnOnUpdateAndDeleteTest() {
+		Book book = createNewBook();
+		book.setId(11L);
+		Mockito.when(repository.findByIsbn(book.getIsbn())).thenReturn(Optional.of(book));
+		Mockito.when(repository.save(book)).thenReturn(book);
+
+		service.findBookByIsbn(book.getIsbn());
+		service.update(book);
+		service.findBookByIsbn(book.getIsbn());
+		service.delete(book);
+		service.findBookByIsbn(book.getIsbn());
+
+		Mockito.verify(repository, Mockito.times(3)).findByIsbn(book.getIsbn());
+	}
+
+	@Test
+	@DisplayName("Should evict the cached ISBN again once the saving transaction commits")
+	void evictCachedIsbnAfterCommitTest() {
+		Book book = createNewBook();
+		Mockito.when(repository.saveAndFlush(book)).thenReturn(book);
+		Mockito.when(repository.findByIsbn(book.getIsbn())).thenReturn(Optional.empty());
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			service.save(book);
+			service.findBookByIsbn(book.getIsbn());
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		Mockito.when(repository.findByIsbn(book.getIsbn())).thenReturn(Optional.of(book));
+		assertThat(service.findBookByIsbn(book.getIsbn())).contains(book);
+	}
+
 	private Book createNewBook() {
 		return Book.builder().title("Title").isbn("1111").author("Rick").build();
 	}
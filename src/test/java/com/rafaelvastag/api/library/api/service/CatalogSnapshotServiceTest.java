@@ -0,0 +1,172 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rafaelvastag.api.library.dto.CatalogEntryDTO;
+import com.rafaelvastag.api.library.mapper.BookMapperImpl;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.repository.BookRepository;
+import com.rafaelvastag.api.library.service.impl.BookSearchIndexImpl;
+import com.rafaelvastag.api.library.service.impl.CatalogSnapshotServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class CatalogSnapshotServiceTest {
+
+	@MockBean
+	BookRepository repository;
+
+	@TempDir
+	Path directory;
+
+	Path file;
+
+	BookSearchIndexImpl searchIndex;
+
+	Cache<String, Optional<Book>> isbnCache;
+
+	CatalogSnapshotServiceImpl snapshotService;
+
+	@BeforeEach
+	void setUp() {
+		file = directory.resolve("catalog.snapshot");
+		searchIndex = new BookSearchIndexImpl(repository);
+		isbnCache = Caffeine.newBuilder().maximumSize(100).build();
+		snapshotService = createService(searchIndex, isbnCache);
+	}
+
+	@Test
+	@DisplayName("Should fill the search index, but not the ISBN cache, from a written snapshot")
+	void writeAndLoadTest() {
+		// Scenery
+		catalog(entry(1L, 0L, "111", "The Lord of the Rings", "Tolkien"), entry(2L, 3L, "222", null, "Pratchett"));
+		snapshotService.write();
+
+		BookSearchIndexImpl freshIndex = new BookSearchIndexImpl(repository);
+		Cache<String, Optional<Book>> freshCache = Caffeine.newBuilder().maximumSize(100).build();
+
+		// Execution
+		boolean loaded = createService(freshIndex, freshCache).load();
+
+		// Assertion
+		assertThat(loaded).isTrue();
+		assertThat(freshIndex.search(Book.builder().title("ring").build(), PageRequest.of(0, 10)).getContent())
+				.containsExactly(1L);
+		assertThat(freshIndex.search(Book.builder().author("pratchett").build(), PageRequest.of(0, 10))
+				.getContent()).containsExactly(2L);
+		assertThat(freshCache.estimatedSize()).isZero();
+	}
+
+	@Test
+	@DisplayName("Should refresh changed and new books and drop deleted ones when verifying")
+	void verifyTest() {
+		// Scenery
+		catalog(entry(1L, 0L, "111", "Rings", "Tolkien"), entry(2L, 0L, "222", "Mort", "Pratchett"),
+				entry(3L, 0L, "333", "Dune", "Herbert"));
+		snapshotService.write();
+		snapshotService.load();
+		Arrays.asList("111", "222", "333").forEach(isbn -> isbnCache.put(isbn, Optional.of(new Book())));
+
+		catalog(entry(1L, 0L, "111", "Rings", "Tolkien"), entry(3L, 1L, "333", "Dune Messiah", "Herbert"),
+				entry(4L, 0L, "444", "Emma", "Austen"));
+
+		// Execution
+		snapshotService.verify();
+
+		// Assertion
+		assertThat(search("mort")).isEmpty();
+		assertThat(search("messiah")).containsExactly(3L);
+		assertThat(search("emma")).containsExactly(4L);
+		assertThat(search("rings")).containsExactly(1L);
+		assertThat(isbnCache.getIfPresent("111")).isPresent();
+		assertThat(isbnCache.getIfPresent("222")).isNull();
+		assertThat(isbnCache.getIfPresent("333")).isNull();
+	}
+
+	@Test
+	@DisplayName("Should ignore a snapshot whose checksum does not match")
+	void loadCorruptSnapshotTest() throws Exception {
+		// Scenery
+		catalog(entry(1L, 0L, "111", "Rings", "Tolkien"));
+		snapshotService.write();
+
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[20] ^= 1;
+		Files.write(file, bytes);
+
+		// Execution
+		boolean loaded = snapshotService.load();
+
+		// Assertion
+		assertThat(loaded).isFalse();
+		assertThat(isbnCache.estimatedSize()).isZero();
+	}
+
+	@Test
+	@DisplayName("Should refuse to start enabled without an explicit snapshot path")
+	void startWithoutPathTest() {
+		// Scenery
+		ReflectionTestUtils.setField(snapshotService, "path", "");
+
+		// Execution
+		Throwable exception = catchThrowable(() -> snapshotService.start());
+
+		// Assertion
+		assertThat(exception).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	@DisplayName("Should report no snapshot when the file does not exist")
+	void loadMissingSnapshotTest() {
+		// Execution
+		boolean loaded = snapshotService.load();
+
+		// Assertion
+		assertThat(loaded).isFalse();
+	}
+
+	private CatalogSnapshotServiceImpl createService(BookSearchIndexImpl index, Cache<String, Optional<Book>> cache) {
+		CatalogSnapshotServiceImpl service = new CatalogSnapshotServiceImpl(repository, index, cache,
+				new BookMapperImpl(), Mockito.mock(PlatformTransactionManager.class));
+		ReflectionTestUtils.setField(service, "enabled", true);
+		ReflectionTestUtils.setField(service, "path", file.toString());
+		return service;
+	}
+
+	private void catalog(CatalogEntryDTO... entries) {
+		List<CatalogEntryDTO> catalog = Arrays.asList(entries);
+		BDDMockito.given(repository.streamCatalog()).willAnswer(invocation -> catalog.stream());
+	}
+
+	private List<Long> search(String title) {
+		return searchIndex.search(Book.builder().title(title).build(), PageRequest.of(0, 10)).getContent();
+	}
+
+	private static CatalogEntryDTO entry(Long id, Long version, String isbn, String title, String author) {
+		return CatalogEntryDTO.builder().id(id).version(version).isbn(isbn).title(title).author(author).build();
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.CustomerLoan;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.repository.CustomerLoanRepository;
+import com.rafaelvastag.api.library.service.impl.CustomerLoanReadModelImpl;
+import com.rafaelvastag.api.library.service.impl.RecordCountServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import({ CustomerLoanReadModelImpl.class, RecordCountServiceImpl.class })
+class CustomerLoanReadModelTest {
+
+	@Autowired
+	CustomerLoanReadModelImpl readModel;
+
+	@Autowired
+	CustomerLoanRepository repository;
+
+	@Autowired
+	TestEntityManager entityManager;
+
+	@Test
+	@DisplayName("Should list a customer's loans with the book inlined and follow returns and book changes")
+	void addAndUpdateTest() {
+		// Scenery
+		Book book = entityManager.persist(Book.builder().title("Title").author("Author").isbn("123").build());
+		Loan loan = entityManager.persist(Loan.builder().book(book).customer("Customer")
+				.emailCustomer("customer@email.com").loanDate(LocalDate.now()).build());
+
+		// Execution
+		readModel.add(loan);
+		loan.setReturned(true);
+		readModel.updateReturned(loan);
+		book.setTitle("New title");
+		readModel.updateBook(book);
+		entityManager.flush();
+		entityManager.clear();
+
+		// Assertion
+		Page<LoanDTO> result = readModel.findByCustomer("Customer", PageRequest.of(0, 10, Sort.by("id")));
+		assertThat(result.getTotalElements()).isOne();
+		LoanDTO loanDTO = result.getContent().get(0);
+		assertThat(loanDTO.getId()).isEqualTo(loan.getId());
+		assertThat(loanDTO.getIsbn()).isEqualTo("123");
+		assertThat(loanDTO.getBook().getTitle()).isEqualTo("New title");
+		assertThat(repository.findById(loan.getId())).map(CustomerLoan::getReturned).hasValue(true);
+		assertThat(readModel.findByCustomer("Other", PageRequest.of(0, 10)).getContent()).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should copy the existing loans when the read model is empty")
+	void backfillTest() {
+		// Scenery
+		Book book = entityManager.persist(Book.builder().title("Title").author("Author").isbn("123").build());
+		Loan loan = entityManager.persist(Loan.builder().book(book).customer("Backfilled")
+				.emailCustomer("customer@email.com").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+
+		// Execution
+		readModel.backfill();
+
+		// Assertion
+		assertThat(repository.findById(loan.getId())).hasValueSatisfying(row -> {
+			assertThat(row.getCustomer()).isEqualTo("Backfilled");
+			assertThat(row.getTitle()).isEqualTo("Title");
+			assertThat(row.getBookId()).isEqualTo(book.getId());
+		});
+	}
+
+}
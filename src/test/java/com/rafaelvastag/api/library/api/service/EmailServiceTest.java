@@ -0,0 +1,129 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.mail.MailSenderAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.rafaelvastag.api.library.model.entity.OutboxMail;
+import com.rafaelvastag.api.library.model.entity.OutboxMail.Status;
+import com.rafaelvastag.api.library.model.repository.OutboxMailRepository;
+import com.rafaelvastag.api.library.service.EmailService;
+import com.rafaelvastag.api.library.service.OutboxMailService;
+import com.rafaelvastag.api.library.service.impl.EmailServiceImpl;
+import com.rafaelvastag.api.library.service.impl.OutboxMailServiceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ImportAutoConfiguration(MailSenderAutoConfiguration.class)
+@Import({ EmailServiceImpl.class, OutboxMailServiceImpl.class, SimpleMeterRegistry.class })
+@TestPropertySource(properties = { "spring.mail.host=localhost", "spring.mail.port=3025",
+		"spring.mail.username=", "spring.mail.password=",
+		"spring.mail.properties.mail.smtp.auth=false", "application.mail.outbox.max-per-second=1000" })
+class EmailServiceTest {
+
+	@RegisterExtension
+	static GreenMailExtension smtpServer = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	@Autowired
+	EmailService emailService;
+
+	@Autowired
+	OutboxMailService outboxMailService;
+
+	@Autowired
+	OutboxMailRepository repository;
+
+	@BeforeEach
+	void setUp() {
+		repository.deleteAll();
+	}
+
+	@Test
+	@DisplayName("Should queue the mails and deliver one message per recipient")
+	void sendMailsThroughOutboxTest() throws Exception {
+		// Scenery
+		List<String> recipients = Arrays.asList("first@email.com", "second@email.com", "first@email.com");
+
+		// Execution
+		emailService.sendMails("Late loan", recipients);
+		assertThat(smtpServer.getReceivedMessages()).isEmpty();
+
+		outboxMailService.dispatchPendingMails();
+
+		// Assertion
+		MimeMessage[] received = smtpServer.getReceivedMessages();
+		assertThat(received).hasSize(2);
+		for (MimeMessage message : received) {
+			assertThat(message.getAllRecipients()).hasSize(1);
+		}
+		assertThat(repository.findAll()).extracting(OutboxMail::getStatus).containsOnly(Status.SENT);
+	}
+
+	@Test
+	@DisplayName("Should keep a failed mail pending with a backoff before the next attempt")
+	void retryFailedMailWithBackoffTest() {
+		// Scenery
+		repository.save(OutboxMail.builder().recipient("not an address").subject("subject").message("message")
+				.status(Status.PENDING).nextAttemptAt(LocalDateTime.now()).build());
+
+		// Execution
+		outboxMailService.dispatchPendingMails();
+
+		// Assertion
+		OutboxMail mail = repository.findAll().get(0);
+		assertThat(mail.getStatus()).isEqualTo(Status.PENDING);
+		assertThat(mail.getAttempts()).isEqualTo(1);
+		assertThat(mail.getLastError()).isNotNull();
+		assertThat(mail.getNextAttemptAt()).isAfter(LocalDateTime.now());
+		assertThat(smtpServer.getReceivedMessages()).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should give up a mail stuck in SENDING once its claims used up every attempt")
+	void failStaleClaimAfterLastAttemptTest() {
+		// Scenery
+		LocalDateTime stale = LocalDateTime.now().minusHours(1);
+		OutboxMail exhausted = repository.save(OutboxMail.builder().recipient("first@email.com").subject("subject")
+				.message("message").status(Status.SENDING).claimedAt(stale).attempts(6).nextAttemptAt(stale).build());
+		OutboxMail retried = repository.save(OutboxMail.builder().recipient("second@email.com").subject("subject")
+				.message("message").status(Status.SENDING).claimedAt(stale).attempts(1).nextAttemptAt(stale).build());
+
+		// Execution
+		int claimed = outboxMailService.dispatchPendingMails();
+
+		// Assertion
+		assertThat(claimed).isOne();
+		assertThat(repository.findById(exhausted.getId()).get().getStatus()).isEqualTo(Status.FAILED);
+		OutboxMail sent = repository.findById(retried.getId()).get();
+		assertThat(sent.getStatus()).isEqualTo(Status.SENT);
+		assertThat(sent.getAttempts()).isEqualTo(2);
+		assertThat(smtpServer.getReceivedMessages()).hasSize(1);
+	}
+
+}
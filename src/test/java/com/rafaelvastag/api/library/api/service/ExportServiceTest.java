@@ -0,0 +1,81 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringWriter;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.service.ExportService;
+import com.rafaelvastag.api.library.service.impl.ExportServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import(ExportServiceImpl.class)
+class ExportServiceTest {
+
+	@Autowired
+	ExportService exportService;
+
+	@Autowired
+	TestEntityManager entityManager;
+
+	Book book;
+
+	Loan loan;
+
+	@BeforeEach
+	void setUp() {
+		book = entityManager.persist(Book.builder().title("Title, \"quoted\"").author("Author").isbn("123").build());
+		loan = entityManager.persist(Loan.builder().book(book).customer("Customer").emailCustomer("customer@email.com")
+				.loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	@DisplayName("Should export one JSON document per line")
+	void exportLoansAsNdjsonTest() throws Exception {
+		// Scenery
+		StringWriter writer = new StringWriter();
+
+		// Execution
+		exportService.exportLoans(ExportService.Format.NDJSON, writer);
+
+		// Assertion
+		assertThat(writer.toString()).isEqualTo("{\"id\":" + loan.getId() + ",\"isbn\":\"123\",\"customerName\":"
+				+ "\"Customer\",\"emailCustomer\":\"customer@email.com\",\"book\":{\"id\":" + book.getId()
+				+ ",\"title\":\"Title, \\\"quoted\\\"\",\"author\":\"Author\",\"isbn\":\"123\"}}\n");
+	}
+
+	@Test
+	@DisplayName("Should export a CSV header and quote the fields that need it")
+	void exportBooksAsCsvTest() throws Exception {
+		// Scenery
+		StringWriter writer = new StringWriter();
+
+		// Execution
+		exportService.exportBooks(ExportService.Format.CSV, writer);
+
+		// Assertion
+		assertThat(writer.toString()).isEqualTo(
+				"id,title,author,isbn\r\n" + book.getId() + ",\"Title, \"\"quoted\"\"\",Author,123\r\n");
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.rafaelvastag.api.library.dto.IdRangeDTO;
+import com.rafaelvastag.api.library.model.entity.JobPartition;
+import com.rafaelvastag.api.library.model.entity.JobPartition.Status;
+import com.rafaelvastag.api.library.model.repository.JobPartitionRepository;
+import com.rafaelvastag.api.library.service.impl.JobCoordinatorImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(JobCoordinatorImpl.class)
+class JobCoordinatorTest {
+
+	private static final String JOB = "test-job";
+
+	@Autowired
+	JobCoordinatorImpl coordinator;
+
+	@Autowired
+	JobPartitionRepository repository;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@BeforeEach
+	void setUp() {
+		repository.deleteAll();
+	}
+
+	@Test
+	@DisplayName("Should plan a run once and split its id range into partitions")
+	void planOnceTest() {
+		// Execution
+		boolean planned = coordinator.plan(JOB, "2021-04-01", () -> new IdRangeDTO(1L, 25L), 10);
+		boolean plannedAgain = coordinator.plan(JOB, "2021-04-01", () -> new IdRangeDTO(1L, 25L), 10);
+
+		// Assertion
+		assertThat(planned).isTrue();
+		assertThat(plannedAgain).isFalse();
+		assertThat(repository.findAll()).extracting(JobPartition::getFirstId, JobPartition::getLastId)
+				.containsExactlyInAnyOrder(tuple(1L, 10L),
+						tuple(11L, 20L), tuple(21L, 25L));
+	}
+
+	@Test
+	@DisplayName("Should hand each partition to one instance only")
+	void claimEachPartitionOnceTest() {
+		// Scenery
+		JobCoordinatorImpl other = otherInstance();
+		coordinator.plan(JOB, "2021-04-01", () -> new IdRangeDTO(1L, 20L), 10);
+
+		// Execution
+		Optional<JobPartition> first = coordinator.claim(JOB);
+		Optional<JobPartition> second = other.claim(JOB);
+		Optional<JobPartition> none = coordinator.claim(JOB);
+
+		// Assertion
+		assertThat(first).isPresent();
+		assertThat(second).isPresent();
+		assertThat(first.get().getId()).isNotEqualTo(second.get().getId());
+		assertThat(second.get().getOwner()).isEqualTo(other.getOwner());
+		assertThat(none).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should resume an abandoned partition from its checkpoint and fence off its old owner")
+	void resumeStalePartitionTest() {
+		// Scenery
+		JobCoordinatorImpl other = otherInstance();
+		coordinator.plan(JOB, "2021-04-01", () -> new IdRangeDTO(1L, 10L), 10);
+		JobPartition abandoned = coordinator.claim(JOB).get();
+		coordinator.checkpoint(abandoned, 5L, () -> { });
+		JobPartition stale = repository.findById(abandoned.getId()).get();
+		stale.setHeartbeatAt(LocalDateTime.now().minusHours(1));
+		repository.save(stale);
+		AtomicInteger chunks = new AtomicInteger();
+
+		// Execution
+		JobPartition resumed = other.claim(JOB).get();
+		boolean oldOwnerCheckpointed = coordinator.checkpoint(abandoned, 10L, chunks::incrementAndGet);
+		boolean newOwnerCheckpointed = other.checkpoint(resumed, 10L, chunks::incrementAndGet);
+		other.complete(resumed);
+
+		// Assertion
+		assertThat(resumed.getCheckpointId()).isEqualTo(10L);
+		assertThat(oldOwnerCheckpointed).isFalse();
+		assertThat(newOwnerCheckpointed).isTrue();
+		assertThat(chunks).hasValue(1);
+		assertThat(repository.findById(resumed.getId()).get().getStatus()).isEqualTo(Status.DONE);
+		assertThat(coordinator.claim(JOB)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should roll a chunk's work back together with its checkpoint")
+	void checkpointWithChunkTest() {
+		// Scenery
+		coordinator.plan(JOB, "2021-04-01", () -> new IdRangeDTO(1L, 10L), 10);
+		JobPartition partition = coordinator.claim(JOB).get();
+		List<Long> checkpoints = new ArrayList<>();
+
+		// Execution
+		try {
+			coordinator.checkpoint(partition, 5L, () -> {
+				throw new IllegalStateException("Mail queue unavailable");
+			});
+		} catch (IllegalStateException ex) {
+			checkpoints.add(repository.findById(partition.getId()).get().getCheckpointId());
+		}
+
+		// Assertion
+		assertThat(checkpoints).containsExactly(0L);
+		assertThat(partition.getCheckpointId()).isZero();
+	}
+
+	private JobCoordinatorImpl otherInstance() {
+		JobCoordinatorImpl other = new JobCoordinatorImpl(repository, transactionManager);
+		ReflectionTestUtils.setField(other, "heartbeatTimeoutSeconds", 300L);
+		return other;
+	}
+
+}
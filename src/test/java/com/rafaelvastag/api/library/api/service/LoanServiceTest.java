@@ -8,10 +8,12 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,20 +21,29 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.Example;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.rafaelvastag.api.library.dto.LoanDTO;
 import com.rafaelvastag.api.library.dto.LoanFilterDTO;
+import com.rafaelvastag.api.library.dto.LoanReturnsResultDTO;
+import com.rafaelvastag.api.library.dto.OpenLoanDTO;
 import com.rafaelvastag.api.library.exception.BusinessException;
 import com.rafaelvastag.api.library.model.entity.Book;
 import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.entity.RecordCount;
 import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.BookAvailabilityIndex;
+import com.rafaelvastag.api.library.service.CustomerLoanReadModel;
 import com.rafaelvastag.api.library.service.LoanService;
+import com.rafaelvastag.api.library.service.OverdueLoanIndex;
+import com.rafaelvastag.api.library.service.RecordCountService;
+import com.rafaelvastag.api.library.service.ReplicaReadGuard;
 import com.rafaelvastag.api.library.service.impl.LoanServiceImpl;
 
 @ExtendWith(SpringExtension.class)
@@ -42,11 +53,27 @@ class LoanServiceTest {
 	@MockBean
 	private LoanRepository repository;
 
+	@MockBean
+	private OverdueLoanIndex overdueLoanIndex;
+
+	@MockBean
+	private BookAvailabilityIndex availabilityIndex;
+
+	@MockBean
+	private RecordCountService recordCounts;
+
+	@MockBean
+	private CustomerLoanReadModel customerLoans;
+
+	@MockBean
+	private ReplicaReadGuard replicaReads;
+
 	private LoanService service;
 
 	@BeforeEach
 	void setUp() {
-		this.service = new LoanServiceImpl(repository);
+		this.service = new LoanServiceImpl(repository, overdueLoanIndex, availabilityIndex, recordCounts,
+				customerLoans, replicaReads);
 	}
 
 	@Test
@@ -55,8 +82,7 @@ class LoanServiceTest {
 		Book book = createBook();
 		Loan loan = createLoan(book);
 
-		BDDMockito.given(repository.existsByBookAndNotReturned(book)).willReturn(false);
-		Mockito.when(repository.save(loan)).thenReturn(loan);
+		Mockito.when(repository.saveAndFlush(loan)).thenReturn(loan);
 
 		Loan loanSaved = service.save(loan);
 
@@ -64,6 +90,8 @@ class LoanServiceTest {
 		assertThat(loanSaved.getBook().getId()).isEqualTo(loan.getBook().getId());
 		assertThat(loanSaved.getCustomer()).isEqualTo(loan.getCustomer());
 		assertThat(loanSaved.getLoanDate()).isEqualTo(loan.getLoanDate());
+		verify(overdueLoanIndex).update(loanSaved);
+		verify(availabilityIndex).update(loanSaved);
 
 	}
 
@@ -73,14 +101,12 @@ class LoanServiceTest {
 		Book book = createBook();
 		Loan loan = createLoan(book);
 
-		BDDMockito.given(repository.existsByBookAndNotReturned(book)).willReturn(true);
+		BDDMockito.given(repository.saveAndFlush(loan)).willThrow(new DataIntegrityViolationException("duplicate",
+				new ConstraintViolationException("duplicate", null, "PUBLIC.UK_LOAN_OPEN_BOOK_INDEX_2")));
 
 		Throwable exception = catchThrowable(() -> service.save(loan));
 
 		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
-
-		verify(repository, never()).save(loan);
-
 	}
 
 	@Test
@@ -111,7 +137,7 @@ class LoanServiceTest {
 		Loan loan = createLoan(createBook());
 		loan.setReturned(true);
 
-		when(service.updateLoan(loan)).thenReturn(loan);
+		when(repository.save(loan)).thenReturn(loan);
 
 		// Execution
 		Loan updatedLoan = service.updateLoan(loan);
@@ -122,24 +148,20 @@ class LoanServiceTest {
 
 	}
 
-	@SuppressWarnings("unchecked")
 	@Test
 	@DisplayName("Should filter loan by properties")
 	void findLoanTest() {
 		// Scenery
-		Loan loan = createLoan(createBook());
+		LoanDTO loan = LoanDTO.builder().id(1L).customerName("Customer").isbn("123456").build();
 		LoanFilterDTO loanFilter = LoanFilterDTO.builder().customerName("Customer").isbn("123456").build();
-		List<Loan> listLoan = Arrays.asList(loan);
+		List<LoanDTO> listLoan = Arrays.asList(loan);
 		PageRequest pageRequest = PageRequest.of(0, 10);
 
-		Page<Loan> page = new PageImpl<Loan>(listLoan, PageRequest.of(0, 10), 1L);
-		Mockito.when(repository.findAll((Mockito.any(Example.class)), Mockito.any(Pageable.class))).thenReturn(page);
-
 		when(repository.findByBookIsbnOrCustomer(Mockito.anyString(), Mockito.anyString(),
-				Mockito.any(PageRequest.class))).thenReturn(page);
+				Mockito.any(PageRequest.class))).thenReturn(listLoan);
 
 		// Execution
-		Page<Loan> result = service.find(loanFilter, pageRequest);
+		Page<LoanDTO> result = service.find(loanFilter, pageRequest);
 
 		// Assertion
 		assertThat(result.getTotalElements()).isEqualTo(1);
@@ -149,6 +171,177 @@ class LoanServiceTest {
 
 	}
 
+	@Test
+	@DisplayName("Should count the filtered loans from the ISBN and customer counters")
+	void findLoanTotalFromCountersTest() {
+		// Scenery
+		LoanDTO loan = LoanDTO.builder().id(1L).customerName("Customer").isbn("123456").build();
+		LoanFilterDTO loanFilter = LoanFilterDTO.builder().customerName("Customer").isbn("123456").build();
+		PageRequest pageRequest = PageRequest.of(0, 1);
+
+		when(repository.findByBookIsbnOrCustomer("123456", "Customer", pageRequest)).thenReturn(Arrays.asList(loan));
+		when(recordCounts.get(RecordCount.isbnLoans("123456"))).thenReturn(3L);
+		when(recordCounts.get(RecordCount.customerLoans("Customer"))).thenReturn(2L);
+		when(repository.countByBookIsbnAndCustomer("123456", "Customer")).thenReturn(1L);
+
+		// Execution
+		Page<LoanDTO> result = service.find(loanFilter, pageRequest);
+
+		// Assertion
+		assertThat(result.getTotalElements()).isEqualTo(4);
+		assertThat(result.getContent()).containsExactly(loan);
+	}
+
+	@Test
+	@DisplayName("Should answer a customer-only filter from the customer read model")
+	void findLoanByCustomerTest() {
+		// Scenery
+		LoanFilterDTO loanFilter = LoanFilterDTO.builder().customerName("Customer").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Page<LoanDTO> page = new PageImpl<>(Arrays.asList(LoanDTO.builder().id(1L).build()), pageRequest, 1L);
+		when(customerLoans.findByCustomer("Customer", pageRequest)).thenReturn(page);
+
+		// Execution
+		Page<LoanDTO> result = service.find(loanFilter, pageRequest);
+
+		// Assertion
+		assertThat(result).isSameAs(page);
+		verify(repository, never()).findByBookIsbnOrCustomer(Mockito.any(), Mockito.any(), Mockito.any());
+	}
+
+	@Test
+	@DisplayName("Should count a new loan for its book, ISBN and customer")
+	void saveLoanCountsTest() {
+		// Scenery
+		Loan loan = createLoan(createBook());
+		Mockito.when(repository.saveAndFlush(loan)).thenReturn(loan);
+
+		// Execution
+		service.save(loan);
+
+		// Assertion
+		verify(recordCounts).add(RecordCount.bookLoans(loan.getBook().getId()), 1);
+		verify(recordCounts).add(RecordCount.isbnLoans(loan.getBook().getIsbn()), 1);
+		verify(recordCounts).add(RecordCount.customerLoans(loan.getCustomer()), 1);
+		verify(customerLoans).add(loan);
+	}
+
+	@Test
+	@DisplayName("Should keep the overdue index in step with returned loans")
+	void updateReturnedLoanTest() {
+		// Scenery
+		Loan loan = createLoan(createBook());
+		loan.setReturned(true);
+		when(repository.save(loan)).thenReturn(loan);
+
+		// Execution
+		service.updateLoan(loan);
+
+		// Assertion
+		verify(overdueLoanIndex).update(loan);
+		verify(availabilityIndex).update(loan);
+	}
+
+	@Test
+	@DisplayName("Should keep the reads of a new loan's book, ISBN and customer off the replicas")
+	void saveLoanRecordsReplicaWritesTest() {
+		// Scenery
+		Loan loan = createLoan(createBook());
+		Mockito.when(repository.saveAndFlush(loan)).thenReturn(loan);
+
+		// Execution
+		service.save(loan);
+
+		// Assertion
+		verify(replicaReads).recordWrites(Arrays.asList(RecordCount.LOANS, RecordCount.bookLoans(11L),
+				RecordCount.isbnLoans("123456"), RecordCount.customerLoans("Customer")));
+	}
+
+	@Test
+	@DisplayName("Should read a book's loans from the primary, like the version behind their ETag")
+	void getLoansByBookFromPrimaryTest() {
+		// Scenery
+		Book book = createBook();
+		Mockito.when(repository.findByBook(book, PageRequest.of(0, 10))).thenReturn(new ArrayList<>());
+
+		// Execution
+		service.getLoansByBook(book, PageRequest.of(0, 10));
+
+		// Assertion
+		verify(replicaReads, never()).readFromReplica(Mockito.any());
+	}
+
+	@Test
+	@DisplayName("Should return loans by id and ISBN with bulk updates and report the ones left untouched")
+	void returnLoansTest() {
+		// Scenery
+		BDDMockito.given(repository.findReturnCandidatesById(Arrays.asList(1L, 2L, 3L)))
+				.willReturn(Arrays.asList(new OpenLoanDTO(1L, 10L, "123"), new OpenLoanDTO(2L, null, "456")));
+		BDDMockito.given(repository.findOpenByIsbns(Arrays.asList("123", "789")))
+				.willReturn(Arrays.asList(new OpenLoanDTO(1L, 10L, "123"), new OpenLoanDTO(4L, 11L, "123")));
+		BDDMockito.given(repository.markReturned(Arrays.asList(1L, 4L))).willReturn(2);
+
+		// Execution
+		LoanReturnsResultDTO result = service.returnLoans(Arrays.asList(1L, 2L, 3L, 1L), Arrays.asList("123", "789"));
+
+		// Assertion
+		assertThat(result.getReturned()).containsExactly(1L, 4L);
+		assertThat(result.getAlreadyReturned()).containsExactly(2L);
+		assertThat(result.getNotFound()).containsExactly(3L);
+		assertThat(result.getIsbnsNotLoaned()).containsExactly("789");
+		verify(repository).markReturned(Arrays.asList(1L, 4L));
+		verify(customerLoans).markReturned(Arrays.asList(1L, 4L));
+		verify(overdueLoanIndex).remove(1L);
+		verify(overdueLoanIndex).remove(4L);
+		verify(availabilityIndex).markAvailable(Arrays.asList(10L, 11L));
+		verify(repository, never()).save(Mockito.any(Loan.class));
+	}
+
+	@Test
+	@DisplayName("Should return loans in batches of one thousand")
+	void returnLoansInBatchesTest() {
+		// Scenery
+		List<Long> ids = new ArrayList<>();
+		for (long id = 1; id <= 2500; id++) {
+			ids.add(id);
+		}
+		Mockito.when(repository.findReturnCandidatesById(Mockito.anyList())).thenAnswer(invocation -> {
+			List<Long> batch = invocation.getArgument(0);
+			List<OpenLoanDTO> loans = new ArrayList<>();
+			batch.forEach(id -> loans.add(new OpenLoanDTO(id, id, "isbn")));
+			return loans;
+		});
+		Mockito.when(repository.markReturned(Mockito.anyList()))
+				.thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+
+		// Execution
+		LoanReturnsResultDTO result = service.returnLoans(ids, null);
+
+		// Assertion
+		assertThat(result.getReturned()).hasSize(2500);
+		verify(repository, times(3)).findReturnCandidatesById(Mockito.anyList());
+		verify(repository, times(3)).markReturned(Mockito.anyList());
+		verify(repository, never()).findOpenByIsbns(Mockito.anyList());
+	}
+
+	@Test
+	@DisplayName("Should fail the return when a loan was returned by someone else before the update")
+	void returnLoansReturnedConcurrentlyTest() {
+		// Scenery
+		BDDMockito.given(repository.findReturnCandidatesById(Arrays.asList(1L, 4L)))
+				.willReturn(Arrays.asList(new OpenLoanDTO(1L, 10L, "123"), new OpenLoanDTO(4L, 11L, "123")));
+		BDDMockito.given(repository.markReturned(Arrays.asList(1L, 4L))).willReturn(1);
+
+		// Execution
+		Throwable exception = catchThrowable(() -> service.returnLoans(Arrays.asList(1L, 4L), null));
+
+		// Assertion
+		assertThat(exception).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+		verify(customerLoans, never()).markReturned(Mockito.anyList());
+		verify(overdueLoanIndex, never()).remove(Mockito.anyLong());
+		verify(availabilityIndex, never()).markAvailable(Mockito.anyList());
+	}
+
 	private Loan createLoan(Book book) {
 		return Loan.builder().id(1L).book(book).customer("Customer").loanDate(LocalDate.now()).build();
 	}
@@ -0,0 +1,145 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.rafaelvastag.api.library.dto.LoanDTO;
+import com.rafaelvastag.api.library.mapper.BookMapperImpl;
+import com.rafaelvastag.api.library.mapper.LoanMapperImpl;
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.repository.LoanRepository;
+import com.rafaelvastag.api.library.service.impl.OverdueLoanIndexImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+class OverdueLoanIndexTest {
+
+	@MockBean
+	LoanRepository repository;
+
+	@MockBean
+	EntityManager entityManager;
+
+	OverdueLoanIndexImpl index;
+
+	LocalDate today = LocalDate.now();
+
+	@BeforeEach
+	void setUp() {
+		this.index = new OverdueLoanIndexImpl(repository, entityManager, new LoanMapperImpl(new BookMapperImpl()));
+		ReflectionTestUtils.setField(index, "loanMaxDays", 4);
+	}
+
+	@Test
+	@DisplayName("Should rebuild from the open loans and list the overdue ones, oldest due date first")
+	void rebuildAndFindOverdueTest() {
+		// Scenery
+		Mockito.when(repository.streamOpenLoans()).thenReturn(Stream.of(createLoan(1L, today.minusDays(4)),
+				createLoan(2L, today.minusDays(3)), createLoan(3L, today.minusDays(9))));
+
+		// Execution
+		index.rebuild();
+
+		// Assertion
+		assertThat(index.findOverdue(today)).extracting(LoanDTO::getId).containsExactly(3L, 1L);
+		assertThat(index.findOverdue(today.plusDays(1))).extracting(LoanDTO::getId).containsExactly(3L, 1L, 2L);
+	}
+
+	@Test
+	@DisplayName("Should pick up the loans opened and returned on other instances when refreshed")
+	void refreshFromDatabaseTest() {
+		// Scenery
+		index.update(createLoan(1L, today.minusDays(10)));
+		Mockito.when(repository.streamOpenLoans()).thenReturn(Stream.of(createLoan(2L, today.minusDays(5))));
+
+		// Execution
+		index.refresh();
+
+		// Assertion
+		assertThat(index.findOverdue(today)).extracting(LoanDTO::getId).containsExactly(2L);
+	}
+
+	@Test
+	@DisplayName("Should drop a loan from the index once it is returned")
+	void returnedLoanTest() {
+		// Scenery
+		Loan loan = createLoan(1L, today.minusDays(10));
+		index.update(loan);
+
+		// Execution
+		loan.setReturned(true);
+		index.update(loan);
+
+		// Assertion
+		assertThat(index.findOverdue(today)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should page the overdue loans")
+	void findOverduePageTest() {
+		// Scenery
+		for (long id = 1; id <= 5; id++) {
+			index.update(createLoan(id, today.minusDays(10 - id)));
+		}
+		index.update(createLoan(6L, today));
+
+		// Execution
+		Page<LoanDTO> page = index.findOverdue(today, PageRequest.of(1, 2));
+
+		// Assertion
+		assertThat(page.getTotalElements()).isEqualTo(5);
+		assertThat(page.getContent()).extracting(LoanDTO::getId).containsExactly(3L, 4L);
+		assertThat(page.getContent().get(0).getIsbn()).isEqualTo("123");
+	}
+
+	@Test
+	@DisplayName("Should only change the index once the loan's transaction commits")
+	void updateAfterCommitTest() {
+		// Scenery
+		Loan loan = createLoan(1L, today.minusDays(10));
+		index.update(loan);
+		Loan returned = createLoan(1L, today.minusDays(10));
+		returned.setReturned(true);
+		TransactionSynchronizationManager.initSynchronization();
+
+		try {
+			// Execution
+			index.update(createLoan(2L, today.minusDays(10)));
+			index.update(returned);
+			Page<LoanDTO> beforeCommit = index.findOverdue(today, PageRequest.of(0, 10));
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+			// Assertion
+			assertThat(beforeCommit.getContent()).extracting(LoanDTO::getId).containsExactly(1L);
+			assertThat(index.findOverdue(today)).extracting(LoanDTO::getId).containsExactly(2L);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private Loan createLoan(Long id, LocalDate loanDate) {
+		Book book = Book.builder().id(id).title("Title").author("Author").isbn("123").build();
+		return Loan.builder().id(id).book(book).customer("Customer").emailCustomer("customer@email.com")
+				.loanDate(loanDate).returned(false).build();
+	}
+
+}
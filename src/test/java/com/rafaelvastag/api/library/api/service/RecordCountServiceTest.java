@@ -0,0 +1,108 @@
+package com.rafaelvastag.api.library.api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.Collections;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.rafaelvastag.api.library.model.entity.Book;
+import com.rafaelvastag.api.library.model.entity.Loan;
+import com.rafaelvastag.api.library.model.entity.RecordCount;
+import com.rafaelvastag.api.library.model.repository.RecordCountRepository;
+import com.rafaelvastag.api.library.service.impl.RecordCountServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(RecordCountServiceImpl.class)
+class RecordCountServiceTest {
+
+	@Autowired
+	RecordCountServiceImpl recordCounts;
+
+	@Autowired
+	RecordCountRepository repository;
+
+	@Autowired
+	TestEntityManager entityManager;
+
+	@Test
+	@DisplayName("Should create a missing counter on its first change and add to it afterwards")
+	void addTest() {
+		// Execution
+		recordCounts.add(RecordCount.customerLoans("New customer"), 1);
+		recordCounts.add(RecordCount.customerLoans("New customer"), 2);
+
+		// Assertion
+		assertThat(recordCounts.get(RecordCount.customerLoans("New customer"))).isEqualTo(3);
+		assertThat(recordCounts.get(RecordCount.customerLoans("Nobody"))).isZero();
+	}
+
+	@Test
+	@DisplayName("Should drop removed counters")
+	void removeTest() {
+		// Scenery
+		recordCounts.add(RecordCount.bookLoans(99L), 5);
+
+		// Execution
+		recordCounts.remove(Collections.singletonList(RecordCount.bookLoans(99L)));
+
+		// Assertion
+		assertThat(repository.findTotal(RecordCount.bookLoans(99L))).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Should fill the counters from the existing books and loans")
+	void backfillTest() {
+		// Scenery
+		Book book = entityManager.persist(Book.builder().title("Title").author("Author").isbn("123").build());
+		entityManager.persist(Book.builder().title("Other").author("Author").isbn("456").build());
+		entityManager.persist(Loan.builder().book(book).customer("Backfilled").loanDate(LocalDate.now())
+				.returned(true).build());
+		entityManager.persist(Loan.builder().book(book).customer("Backfilled").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		repository.deleteAllInBatch();
+
+		// Execution
+		recordCounts.backfill();
+
+		// Assertion
+		assertThat(recordCounts.get(RecordCount.BOOKS)).isEqualTo(2);
+		assertThat(recordCounts.get(RecordCount.bookLoans(book.getId()))).isEqualTo(2);
+		assertThat(recordCounts.get(RecordCount.isbnLoans("123"))).isEqualTo(2);
+		assertThat(recordCounts.get(RecordCount.isbnLoans("456"))).isZero();
+		assertThat(recordCounts.get(RecordCount.customerLoans("Backfilled"))).isEqualTo(2);
+	}
+
+	@Test
+	@DisplayName("Should backfill a missing counter even when the others already exist")
+	void backfillMissingCounterTest() {
+		// Scenery
+		Book book = entityManager.persist(Book.builder().title("Title").author("Author").isbn("123").build());
+		entityManager.persist(Loan.builder().book(book).customer("Backfilled").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		repository.deleteAllInBatch();
+		recordCounts.backfill();
+		repository.deleteById(RecordCount.LOANS);
+		repository.flush();
+
+		// Execution
+		recordCounts.backfill();
+
+		// Assertion
+		assertThat(recordCounts.get(RecordCount.LOANS)).isEqualTo(1);
+		assertThat(recordCounts.get(RecordCount.BOOKS)).isEqualTo(1);
+		assertThat(recordCounts.get(RecordCount.customerLoans("Backfilled"))).isEqualTo(1);
+	}
+
+}